@@ -0,0 +1,52 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Starts the application for benchmarks, without a web server when they call beans directly
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        ConfigurableApplicationContext context = run(WebApplicationType.NONE, properties);
+
+        // controller methods build links from the current request
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(
+                new MockHttpServletRequest("GET", "/vehicles")), true);
+        return context;
+    }
+
+    /* Start with the embedded web server on a random port, see local.server.port */
+    static ConfigurableApplicationContext startServer(String... properties) {
+        String[] withPort = Arrays.copyOf(properties, properties.length + 1);
+        withPort[properties.length] = "server.port=0";
+        return run(WebApplicationType.SERVLET, withPort);
+    }
+
+    private static ConfigurableApplicationContext run(WebApplicationType type, String... properties) {
+        SpringApplication application = new SpringApplication(Application.class);
+        application.setWebApplicationType(type);
+        String[] args = new String[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            args[i] = "--" + properties[i];
+        }
+        return application.run(args);
+    }
+
+    /* Insert the vehicles through the batch service, so every write also reaches the caches and the index */
+    static void load(ConfigurableApplicationContext context, List<Vehicle> vehicles) {
+        VehicleBatchService batchService = context.getBean(VehicleBatchService.class);
+        for (int from = 0; from < vehicles.size(); from += 10000) {
+            batchService.create(vehicles.subList(from, Math.min(from + 10000, vehicles.size())));
+        }
+    }
+}
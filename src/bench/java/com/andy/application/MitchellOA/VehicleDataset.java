@@ -0,0 +1,110 @@
+package com.andy.application.MitchellOA;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Deterministic synthetic vehicles for the benchmarks
+public final class VehicleDataset {
+    static final String[] MAKES = {"Toyota", "Honda", "Ford", "Chevrolet", "Nissan", "Kia", "Hyundai", "Mazda",
+            "Subaru", "Tesla"};
+    static final String[] MODELS = {"Camry", "Civic", "F150", "Silverado", "Altima", "Sorrento", "Elantra", "Miata",
+            "Outback", "Model3", "Corolla", "Accord", "Escape", "Malibu", "Rogue", "Soul"};
+
+    // Makes by rough share of registrations, each with its own models, most popular first
+    static final String[] FLEET_MAKES = {"Toyota", "Ford", "Chevrolet", "Honda", "Nissan", "Jeep", "Hyundai", "Kia",
+            "Subaru", "Ram", "GMC", "Mazda", "Tesla", "BMW", "Volkswagen", "Lexus"};
+    static final int[] FLEET_MAKE_SHARES = {15, 13, 12, 10, 7, 5, 5, 4, 4, 4, 3, 3, 3, 2, 2, 2};
+    static final String[][] FLEET_MODELS = {
+            {"RAV4", "Camry", "Corolla", "Tacoma", "Highlander", "Tundra", "Prius", "4Runner"},
+            {"F-150", "Escape", "Explorer", "Mustang", "Focus", "Fusion", "Edge", "Ranger"},
+            {"Silverado", "Equinox", "Malibu", "Tahoe", "Traverse", "Camaro", "Colorado"},
+            {"CR-V", "Civic", "Accord", "Pilot", "Odyssey", "HR-V", "Ridgeline"},
+            {"Rogue", "Altima", "Sentra", "Frontier", "Pathfinder", "Versa"},
+            {"Grand Cherokee", "Wrangler", "Cherokee", "Compass", "Gladiator"},
+            {"Tucson", "Elantra", "Santa Fe", "Sonata", "Kona", "Palisade"},
+            {"Sportage", "Sorento", "Forte", "Soul", "Telluride", "Optima"},
+            {"Outback", "Forester", "Crosstrek", "Impreza", "Ascent"},
+            {"1500", "2500", "3500", "ProMaster"},
+            {"Sierra", "Terrain", "Acadia", "Yukon"},
+            {"CX-5", "Mazda3", "CX-30", "CX-9", "MX-5 Miata"},
+            {"Model Y", "Model 3", "Model S", "Model X"},
+            {"X5", "3 Series", "X3", "5 Series"},
+            {"Jetta", "Tiguan", "Atlas", "Passat", "Golf"},
+            {"RX", "ES", "NX", "GX"}};
+    // model years count back from here, new cars are the most common
+    static final int NEWEST_YEAR = 2024;
+
+    private static final int[] MAKE_CUMULATIVE = cumulative(FLEET_MAKE_SHARES);
+
+    private VehicleDataset() {
+    }
+
+    public static List<Vehicle> generate(int count, long seed) {
+        Random random = new Random(seed);
+        List<Vehicle> vehicles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            vehicles.add(new Vehicle(VehicleValidator.YEAR_START + random.nextInt(101),
+                    MAKES[random.nextInt(MAKES.length)], MODELS[random.nextInt(MODELS.length)]));
+        }
+        return vehicles;
+    }
+
+    /* Vehicles shaped like a registration database: a few makes and models hold most rows (the models of a make
+       fall off as 1/rank) and ages are roughly exponential with a mean of 8 years, plus 1% classics back to
+       YEAR_START. Generate millions in chunks with a different seed per chunk */
+    public static List<Vehicle> fleet(int count, long seed) {
+        Random random = new Random(seed);
+        List<Vehicle> vehicles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int make = fleetMake(random);
+            vehicles.add(new Vehicle(fleetYear(random), FLEET_MAKES[make], fleetModel(make, random)));
+        }
+        return vehicles;
+    }
+
+    /* A make index drawn with FLEET_MAKE_SHARES */
+    static int fleetMake(Random random) {
+        int pick = random.nextInt(MAKE_CUMULATIVE[MAKE_CUMULATIVE.length - 1]);
+        int make = 0;
+        while (MAKE_CUMULATIVE[make] <= pick) {
+            make++;
+        }
+        return make;
+    }
+
+    /* One of the make's models, the first one about twice as often as the second */
+    static String fleetModel(int make, Random random) {
+        String[] models = FLEET_MODELS[make];
+        double total = 0;
+        for (int rank = 1; rank <= models.length; rank++) {
+            total += 1.0 / rank;
+        }
+        double pick = random.nextDouble() * total;
+        for (int rank = 1; rank < models.length; rank++) {
+            pick -= 1.0 / rank;
+            if (pick < 0) {
+                return models[rank - 1];
+            }
+        }
+        return models[models.length - 1];
+    }
+
+    static int fleetYear(Random random) {
+        if (random.nextInt(100) == 0) {
+            return VehicleValidator.YEAR_START + random.nextInt(NEWEST_YEAR - VehicleValidator.YEAR_START + 1);
+        }
+        int age = (int) (-8 * Math.log(1 - random.nextDouble()));
+        return Math.max(VehicleValidator.YEAR_START, NEWEST_YEAR - age);
+    }
+
+    private static int[] cumulative(int[] shares) {
+        int[] sums = new int[shares.length];
+        int sum = 0;
+        for (int i = 0; i < shares.length; i++) {
+            sum += shares[i];
+            sums[i] = sum;
+        }
+        return sums;
+    }
+}
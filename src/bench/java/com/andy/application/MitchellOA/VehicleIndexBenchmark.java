@@ -0,0 +1,137 @@
+package com.andy.application.MitchellOA;
+
+import org.flywaydb.core.Flyway;
+
+import java.sql.*;
+import java.util.*;
+
+// Times the GET /vehicles query shapes against the Flyway schema as the table grows,
+// once with the migration's indexes and once without them.
+// Args: comma separated row counts, default 10000,100000,1000000,10000000 (10M needs about -Xmx6g), run with
+// mvn -Pbenchmark compile exec:exec -Dbenchmark.main=com.andy.application.MitchellOA.VehicleIndexBenchmark -Dbenchmark.args=10000,100000
+public class VehicleIndexBenchmark {
+    private static final int NEEDLES = 50; // rows that match the searches, the same at every size
+    private static final int WARMUP = 20;
+    private static final int RUNS = 50;
+
+    private static final String[] QUERIES = {
+            // make + model + year range
+            "SELECT id, year, make, model FROM vehicle WHERE make IN (?) AND model IN (?) "
+                    + "AND year BETWEEN ? AND ? AND id > 0 ORDER BY id LIMIT 1001",
+            // make only
+            "SELECT id, year, make, model FROM vehicle WHERE make IN (?) AND id > 0 ORDER BY id LIMIT 1001",
+            // model + year range
+            "SELECT id, year, make, model FROM vehicle WHERE model IN (?) "
+                    + "AND year BETWEEN ? AND ? AND id > 0 ORDER BY id LIMIT 1001"
+    };
+    private static final String[] NAMES = {"make+model+year", "make", "model+year"};
+
+    public static void main(String[] args) throws SQLException {
+        String sizes = args.length > 0 ? args[0] : "10000,100000,1000000,10000000";
+
+        System.out.printf("%-12s %-18s %14s %14s%n", "rows", "query", "indexed (us)", "no index (us)");
+        for (String size : sizes.split(",")) {
+            int rows = Integer.parseInt(size.trim());
+            if (rows < NEEDLES) {
+                throw new IllegalArgumentException("sizes must be at least " + NEEDLES + " rows");
+            }
+            // H2 would otherwise hand back the cached result of an identical query
+            String url = "jdbc:h2:mem:bench" + rows + ";DB_CLOSE_DELAY=-1;OPTIMIZE_REUSE_RESULTS=0";
+            Flyway.configure().dataSource(url, "sa", "").load().migrate();
+
+            try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+                load(connection, rows);
+
+                double[] indexed = timeQueries(connection);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("DROP INDEX idx_vehicle_make_model_year");
+                    statement.execute("DROP INDEX idx_vehicle_model_year");
+                    statement.execute("DROP INDEX idx_vehicle_year");
+                }
+                double[] scanned = timeQueries(connection);
+
+                for (int q = 0; q < QUERIES.length; q++) {
+                    System.out.printf("%-12d %-18s %14.1f %14.1f%n", rows, NAMES[q], indexed[q], scanned[q]);
+                }
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("DROP ALL OBJECTS");
+                }
+            }
+        }
+    }
+
+    // Fill the table with random vehicles plus NEEDLES rows that the queries look for
+    private static void load(Connection connection, int rows) throws SQLException {
+        Random random = new Random(42);
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO vehicle (id, year, make, model) VALUES (?, ?, ?, ?)")) {
+            // every step-th row up to exactly NEEDLES of them, the remainder of rows / NEEDLES gets none
+            int step = rows / NEEDLES;
+            for (int id = 1; id <= rows; id++) {
+                boolean needle = id % step == 0 && id <= NEEDLES * step;
+                insert.setInt(1, id);
+                insert.setInt(2, needle ? 2005 : 1950 + random.nextInt(101));
+                insert.setString(3, needle ? "NeedleMake" : "Make" + random.nextInt(500));
+                insert.setString(4, needle ? "NeedleModel" : "Model" + random.nextInt(5000));
+                insert.addBatch();
+                if (id % 1000 == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+    }
+
+    // Median time per query in microseconds
+    private static double[] timeQueries(Connection connection) throws SQLException {
+        double[] medians = new double[QUERIES.length];
+        for (int q = 0; q < QUERIES.length; q++) {
+            try (PreparedStatement query = connection.prepareStatement(QUERIES[q])) {
+                bind(query, q);
+                long[] times = new long[RUNS];
+                for (int run = 0; run < WARMUP + RUNS; run++) {
+                    long start = System.nanoTime();
+                    int found = 0;
+                    try (ResultSet resultSet = query.executeQuery()) {
+                        while (resultSet.next()) {
+                            found++;
+                        }
+                    }
+                    if (found != NEEDLES) {
+                        throw new IllegalStateException(NAMES[q] + " found " + found + " rows");
+                    }
+                    if (run >= WARMUP) {
+                        times[run - WARMUP] = System.nanoTime() - start;
+                    }
+                }
+                Arrays.sort(times);
+                medians[q] = times[RUNS / 2] / 1000.0;
+            }
+        }
+        return medians;
+    }
+
+    private static void bind(PreparedStatement query, int q) throws SQLException {
+        switch (q) {
+            case 0:
+                query.setString(1, "NeedleMake");
+                query.setString(2, "NeedleModel");
+                query.setInt(3, 2000);
+                query.setInt(4, 2010);
+                break;
+            case 1:
+                query.setString(1, "NeedleMake");
+                break;
+            default:
+                query.setString(1, "NeedleModel");
+                query.setInt(2, 2000);
+                query.setInt(3, 2010);
+        }
+    }
+}
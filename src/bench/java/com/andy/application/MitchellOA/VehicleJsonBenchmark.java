@@ -0,0 +1,38 @@
+package com.andy.application.MitchellOA;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Jackson serialization of GET /vehicles sized responses
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VehicleJsonBenchmark {
+    @Param({"100", "10000"})
+    private int size;
+
+    private List<Vehicle> vehicles;
+    private ObjectWriter writer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        vehicles = VehicleDataset.generate(size, 42);
+        for (int i = 0; i < vehicles.size(); i++) {
+            vehicles.get(i).setId(i + 1);
+        }
+        writer = new ObjectMapper().writerFor(new TypeReference<List<Vehicle>>() {});
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws Exception {
+        return writer.writeValueAsBytes(vehicles);
+    }
+}
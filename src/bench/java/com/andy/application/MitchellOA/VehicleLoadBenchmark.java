@@ -0,0 +1,302 @@
+package com.andy.application.MitchellOA;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Load and soak test of the HTTP API against an in-process server, on a fleet shaped dataset (VehicleDataset.fleet)
+// bulk loaded through VehicleBatchService, a million rows take a few minutes. Closed-loop clients pick every
+// request from a mix of searches (GET /vehicles by make, make and model or make and a year range, one page of 50),
+// reads by id and writes (PUT /vehicles/{id} of an existing vehicle or POST /vehicles, half each).
+// Every report interval prints throughput and p50/p99/p999/max latency per operation from HdrHistogram, the heap
+// in use and left after the last GC, and the GC count and time of the interval. A summary of the whole run
+// follows. A soak test is a long run: look for latency, heap after GC or GC time creeping up between intervals.
+// The interval histograms also go to target/vehicle-load.hlog, tagged by operation, for HdrHistogram's log tools.
+// Clients and server share the JVM, so heap and GC include the clients. Latency is measured from send to response
+// in a closed loop, so time a request would have queued under a fixed arrival rate is not in it.
+// Args: rows, clients, seconds, mix as search,get,write percentages, report interval seconds, default
+// 1000000 64 300 20,70,10 10. Anything after is an application property, e.g. vehicles.search.engine=index.
+// One report interval of warm-up runs first and is not counted. Run with
+// mvn -Pbenchmark compile exec:exec -Dbenchmark.main=com.andy.application.MitchellOA.VehicleLoadBenchmark -Dbenchmark.args="1000000 64 3600"
+public class VehicleLoadBenchmark {
+    private static final int LOAD_CHUNK = 10000;
+    private static final int PAGE_SIZE = 50;
+    private static final String HISTOGRAM_LOG = "target/vehicle-load.hlog";
+
+    private enum Operation { SEARCH, GET, CREATE, UPDATE }
+
+    private final String base;
+    private final int rows;
+    private final int searchShare;
+    private final int getShare;
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, Histogram> totals = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+    private final AtomicReference<String> firstError = new AtomicReference<>();
+    private volatile long deadline;
+
+    private VehicleLoadBenchmark(String base, int rows, int[] mix) {
+        this.base = base;
+        this.rows = rows;
+        this.searchShare = mix[0];
+        this.getShare = mix[1];
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(3));
+            totals.put(operation, new Histogram(3));
+            errors.put(operation, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+        int[] mix = Arrays.stream((args.length > 3 ? args[3] : "20,70,10").split(","))
+                .mapToInt(share -> Integer.parseInt(share.trim())).toArray();
+        int interval = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        String[] properties = args.length > 5 ? Arrays.copyOfRange(args, 5, args.length) : new String[0];
+        if (mix.length != 3 || Arrays.stream(mix).sum() != 100) {
+            throw new IllegalArgumentException("mix is search,get,write percentages adding up to 100");
+        }
+
+        ConfigurableApplicationContext context = BenchmarkContext.startServer(properties);
+        try {
+            load(context, rows);
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            new VehicleLoadBenchmark(base, rows, mix).run(clients, seconds, interval);
+        } finally {
+            context.close();
+        }
+    }
+
+    // Bulk insert in chunks, so millions of rows never sit on the heap at once
+    private static void load(ConfigurableApplicationContext context, int rows) {
+        VehicleBatchService batchService = context.getBean(VehicleBatchService.class);
+        long start = System.nanoTime();
+        for (int from = 0, chunk = 0; from < rows; from += LOAD_CHUNK, chunk++) {
+            batchService.create(VehicleDataset.fleet(Math.min(LOAD_CHUNK, rows - from), 42 + chunk));
+        }
+        double loadSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("loaded %d vehicles in %.1f s (%.0f rows/s)%n", rows, loadSeconds, rows / loadSeconds);
+    }
+
+    private void run(int clients, int seconds, int interval) throws InterruptedException, FileNotFoundException {
+        long warmUp = Duration.ofSeconds(interval).toNanos();
+        long start = System.nanoTime();
+        deadline = start + warmUp + Duration.ofSeconds(seconds).toNanos();
+
+        List<CompletableFuture<Void>> running = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            running.add(done);
+            loop(new Random(c), done);
+        }
+
+        Thread.sleep(Duration.ofNanos(warmUp).toMillis());
+        long baseTime = System.currentTimeMillis();
+        for (Recorder recorder : recorders.values()) {
+            recorder.getIntervalHistogram(); // drop the warm-up
+        }
+        for (AtomicLong count : errors.values()) {
+            count.set(0);
+        }
+
+        HistogramLogWriter logWriter = new HistogramLogWriter(new File(HISTOGRAM_LOG));
+        logWriter.setBaseTime(baseTime);
+        logWriter.outputLogFormatVersion();
+        logWriter.outputBaseTime(baseTime);
+        logWriter.outputLegend();
+
+        System.out.printf("%d clients, %d rows, %d s, interval %d s%n", clients, rows, seconds, interval);
+        System.out.printf("%8s %-7s %10s %10s %10s %10s %10s %8s%n",
+                "time (s)", "op", "req/s", "p50 (ms)", "p99 (ms)", "p999 (ms)", "max (ms)", "errors");
+        GcSample gc = new GcSample();
+        long measured = System.nanoTime();
+        long[] reportedErrors = new long[Operation.values().length];
+        while (System.nanoTime() < deadline) {
+            long sleep = Math.min(Duration.ofSeconds(interval).toNanos(), deadline - System.nanoTime());
+            Thread.sleep(Math.max(1, Duration.ofNanos(sleep).toMillis()));
+            double elapsed = (System.nanoTime() - measured) / 1e9;
+            for (Operation operation : Operation.values()) {
+                Histogram histogram = recorders.get(operation).getIntervalHistogram();
+                totals.get(operation).add(histogram);
+                histogram.setTag(operation.name());
+                logWriter.outputIntervalHistogram(histogram);
+
+                long errorCount = errors.get(operation).get();
+                print(String.format("%8.0f", elapsed), operation, histogram,
+                        histogram.getTotalCount() / (sleep / 1e9), errorCount - reportedErrors[operation.ordinal()]);
+                reportedErrors[operation.ordinal()] = errorCount;
+            }
+            System.out.println("        " + gc.next());
+        }
+
+        CompletableFuture.allOf(running.toArray(new CompletableFuture[0])).join();
+        logWriter.close();
+
+        double total = (System.nanoTime() - measured) / 1e9;
+        System.out.println("summary");
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = totals.get(operation);
+            print("all", operation, histogram, histogram.getTotalCount() / total, errors.get(operation).get());
+        }
+        if (firstError.get() != null) {
+            System.out.println("first error: " + firstError.get());
+        }
+        System.out.println("histograms: " + HISTOGRAM_LOG);
+    }
+
+    private static void print(String time, Operation operation, Histogram histogram, double rate, long errorCount) {
+        System.out.printf("%8s %-7s %10.0f %10.2f %10.2f %10.2f %10.2f %8d%n", time,
+                operation.name().toLowerCase(), rate, millis(histogram, 50), millis(histogram, 99),
+                millis(histogram, 99.9), histogram.getMaxValue() / 1e6, errorCount);
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    // One client: send, wait for the response, pick the next request, until the deadline, then complete done.
+    // The next request is sent from the response callback rather than composed onto it: a chain of composed
+    // futures would keep every request of the run reachable and show up as heap after GC creeping up
+    private void loop(Random random, CompletableFuture<Void> done) {
+        if (System.nanoTime() >= deadline) {
+            done.complete(null);
+            return;
+        }
+        Operation operation = pick(random);
+        HttpRequest request = request(operation, random);
+        long start = System.nanoTime();
+        http.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> {
+                    if (failure != null || response.statusCode() >= 400) {
+                        errors.get(operation).incrementAndGet();
+                        firstError.compareAndSet(null, operation + " " + request.uri() + ": "
+                                + (failure != null ? failure.toString() : "HTTP " + response.statusCode()));
+                    } else {
+                        recorders.get(operation).recordValue(System.nanoTime() - start);
+                    }
+                    loop(random, done);
+                });
+    }
+
+    private Operation pick(Random random) {
+        int pick = random.nextInt(100);
+        if (pick < searchShare) {
+            return Operation.SEARCH;
+        }
+        if (pick < searchShare + getShare) {
+            return Operation.GET;
+        }
+        return random.nextBoolean() ? Operation.CREATE : Operation.UPDATE;
+    }
+
+    // Searches and writes use the dataset's distribution, so popular makes are searched and written most.
+    // A fresh database hands out the ids from 1
+    private HttpRequest request(Operation operation, Random random) {
+        switch (operation) {
+            case SEARCH:
+                return get("/vehicles?" + searchQuery(random) + "&limit=" + PAGE_SIZE);
+            case GET:
+                return get("/vehicles/" + (1 + random.nextInt(rows)));
+            case CREATE:
+                return send("POST", "/vehicles", vehicleJson(random));
+            default:
+                return send("PUT", "/vehicles/" + (1 + random.nextInt(rows)), vehicleJson(random));
+        }
+    }
+
+    private static String searchQuery(Random random) {
+        int make = VehicleDataset.fleetMake(random);
+        String query = "make=" + encode(VehicleDataset.FLEET_MAKES[make]);
+        switch (random.nextInt(3)) {
+            case 0:
+                return query;
+            case 1:
+                return query + "&model=" + encode(VehicleDataset.fleetModel(make, random));
+            default:
+                int yearStart = VehicleDataset.fleetYear(random);
+                return query + "&yearStart=" + yearStart + "&yearEnd=" + (yearStart + 4);
+        }
+    }
+
+    private static String vehicleJson(Random random) {
+        int make = VehicleDataset.fleetMake(random);
+        return "{\"year\":" + VehicleDataset.fleetYear(random)
+                + ",\"make\":\"" + VehicleDataset.FLEET_MAKES[make]
+                + "\",\"model\":\"" + VehicleDataset.fleetModel(make, random) + "\"}";
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path)).timeout(Duration.ofSeconds(60)).build();
+    }
+
+    private HttpRequest send(String method, String path, String json) {
+        return HttpRequest.newBuilder(URI.create(base + path))
+                .timeout(Duration.ofSeconds(60))
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    // Heap now and after the last collection, and the GC work since the previous sample
+    private static final class GcSample {
+        private long collections;
+        private long gcMillis;
+
+        GcSample() {
+            next();
+        }
+
+        String next() {
+            long count = 0;
+            long time = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+                time += Math.max(0, collector.getCollectionTime());
+            }
+            long afterGc = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if (pool.getType() == MemoryType.HEAP && usage != null) {
+                    afterGc += usage.getUsed();
+                }
+            }
+            long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            String sample = String.format("heap %d MB, after GC %d MB, %d GCs taking %d ms",
+                    used >> 20, afterGc >> 20, count - collections, time - gcMillis);
+            collections = count;
+            gcMillis = time;
+            return sample;
+        }
+    }
+}
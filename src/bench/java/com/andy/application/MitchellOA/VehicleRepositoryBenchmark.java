@@ -0,0 +1,48 @@
+package com.andy.application.MitchellOA;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// findById and save against H2 through VehicleRepository, findById with and without the by-ID cache
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VehicleRepositoryBenchmark {
+    private static final int ROWS = 100000;
+
+    @Param({"true", "false"})
+    private boolean cached;
+
+    private ConfigurableApplicationContext context;
+    private VehicleRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(
+                "spring.cache.caffeine.spec=maximumSize=" + (cached ? ROWS : 0) + ",recordStats");
+        BenchmarkContext.load(context, VehicleDataset.generate(ROWS, 42));
+        repository = context.getBean(VehicleRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Vehicle> findById() {
+        return repository.findById(1 + ThreadLocalRandom.current().nextInt(ROWS));
+    }
+
+    @Benchmark
+    public Vehicle save() {
+        return repository.save(new Vehicle(2015, "Toyota", "Camry"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.andy.application.MitchellOA;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// VehicleController.getVehicles filtering at different table sizes, for each search engine.
+// The result cache is switched off so every call runs the engine
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VehicleSearchBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"database", "index", "columnar"})
+    private String engine;
+
+    private ConfigurableApplicationContext context;
+    private VehicleController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start("vehicles.search.engine=" + engine, "vehicles.search.cache.enabled=false");
+        BenchmarkContext.load(context, VehicleDataset.generate(rows, 42));
+        controller = context.getBean(VehicleController.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Vehicle> makeModelYear() {
+        return controller.getVehicles(2000, 2005, "Camry", "Toyota", 100, null).getBody();
+    }
+
+    @Benchmark
+    public List<Vehicle> makes() {
+        return controller.getVehicles(null, null, null, "Toyota,Honda", 100, null).getBody();
+    }
+
+    @Benchmark
+    public List<Vehicle> yearRange() {
+        return controller.getVehicles(1990, 1999, null, null, 100, null).getBody();
+    }
+
+    @Benchmark
+    public List<Vehicle> unpagedMakeModel() {
+        return controller.getVehicles(null, null, "Civic", "Honda", null, null).getBody();
+    }
+}
@@ -0,0 +1,68 @@
+package com.andy.application.MitchellOA;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// findById and insert through the VehicleStore, H2 via JPA against the log store. The contended insert
+// runs 8 writers at once, where the log store's group commit shares one fsync between them
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VehicleStoreBenchmark {
+    private static final int ROWS = 100000;
+
+    @Param({"jpa", "log"})
+    private String store;
+
+    private ConfigurableApplicationContext context;
+    private VehicleStore vehicleStore;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("vehicle-store-benchmark");
+        // the by-ID cache is off, so both stores are measured rather than Caffeine
+        context = BenchmarkContext.start("vehicles.store=" + store,
+                "vehicles.store.log.directory=" + directory,
+                "spring.cache.caffeine.spec=maximumSize=0");
+        BenchmarkContext.load(context, VehicleDataset.generate(ROWS, 42));
+        vehicleStore = context.getBean(VehicleStore.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public Optional<Vehicle> findById() {
+        return vehicleStore.findById(1 + ThreadLocalRandom.current().nextInt(ROWS));
+    }
+
+    @Benchmark
+    public Vehicle insert() {
+        Vehicle vehicle = new Vehicle(2015, "Toyota", "Camry");
+        vehicleStore.insert(vehicle);
+        return vehicle;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Vehicle insertContended() {
+        Vehicle vehicle = new Vehicle(2015, "Toyota", "Camry");
+        vehicleStore.insert(vehicle);
+        return vehicle;
+    }
+}
@@ -0,0 +1,151 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Closed-loop load test of GET /vehicles/{id} over HTTP, once on Tomcat's platform thread pool and once with
+// vehicles.threads.virtual=true (needs a Java 21 runtime). Every client sends its next request as soon as the
+// previous one returns, so the number of clients is the number of requests in flight.
+// The by-id cache is turned off, every request takes a JDBC connection from the Hikari pool.
+// Args: comma separated client counts, seconds per run, rows, default 1000,10000 30 100000. Both the server and
+// the clients hold one socket per client, 10k clients need about 25k open files. Run with
+// mvn -Pbenchmark compile exec:exec -Dbenchmark.main=com.andy.application.MitchellOA.VehicleThreadModeBenchmark -Dbenchmark.args="1000,10000 30"
+public class VehicleThreadModeBenchmark {
+    private static final String[] MODES = {"platform", "virtual"};
+
+    public static void main(String[] args) throws Exception {
+        String clients = args.length > 0 ? args[0] : "1000,10000";
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int rows = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+
+        System.out.printf("%-9s %8s %10s %10s %10s %10s %10s %8s%n",
+                "threads", "clients", "req/s", "p50 (ms)", "p99 (ms)", "p999 (ms)", "max (ms)", "errors");
+        for (String mode : MODES) {
+            ConfigurableApplicationContext context = BenchmarkContext.startServer(
+                    "vehicles.threads.virtual=" + mode.equals("virtual"),
+                    "spring.cache.caffeine.spec=maximumSize=0",
+                    "server.tomcat.accept-count=10000");
+            try {
+                BenchmarkContext.load(context, VehicleDataset.generate(rows, 42));
+                String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+
+                for (String count : clients.split(",")) {
+                    int n = Integer.parseInt(count.trim());
+                    run(base, n, Math.max(1, seconds / 3), rows); // warm up, the results are dropped
+                    Result result = run(base, n, seconds, rows);
+                    System.out.printf("%-9s %8d %10.0f %10.1f %10.1f %10.1f %10.1f %8d%n", mode, n,
+                            result.latencies.length / (double) seconds, result.percentile(0.50),
+                            result.percentile(0.99), result.percentile(0.999), result.percentile(1.0),
+                            result.errors);
+                    if (result.firstError != null) {
+                        System.out.println("  first error: " + result.firstError);
+                    }
+                }
+            } finally {
+                context.close();
+            }
+        }
+    }
+
+    // Run the clients for the given time and collect one latency per completed request
+    private static Result run(String base, int clients, int seconds, int rows) throws InterruptedException {
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        AtomicLong errors = new AtomicLong();
+        AtomicReference<String> firstError = new AtomicReference<>();
+        List<long[]> samples = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> running = new ArrayList<>();
+
+        Random random = new Random(7);
+        for (int c = 0; c < clients; c++) {
+            LatencyLog log = new LatencyLog();
+            // a fresh database hands out the ids from 1
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/vehicles/" + (1 + random.nextInt(rows))))
+                    .timeout(Duration.ofSeconds(60))
+                    .build();
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            running.add(done.thenRun(() -> samples.add(log.toArray())));
+            loop(http, request, deadline, log, errors, firstError, done);
+        }
+        CompletableFuture.allOf(running.toArray(new CompletableFuture[0])).join();
+        Thread.sleep(1000); // let the server drop the idle connections before the next run
+
+        int total = samples.stream().mapToInt(s -> s.length).sum();
+        long[] latencies = new long[total];
+        int at = 0;
+        for (long[] sample : samples) {
+            System.arraycopy(sample, 0, latencies, at, sample.length);
+            at += sample.length;
+        }
+        Arrays.sort(latencies);
+        return new Result(latencies, errors.get(), firstError.get());
+    }
+
+    // One client: send, wait for the response, send again until the deadline, then complete done.
+    // Re-armed from the callback like VehicleLoadBenchmark.loop, so finished requests are not kept reachable
+    private static void loop(HttpClient http, HttpRequest request, long deadline, LatencyLog log,
+                             AtomicLong errors, AtomicReference<String> firstError, CompletableFuture<Void> done) {
+        if (System.nanoTime() >= deadline) {
+            done.complete(null);
+            return;
+        }
+        long start = System.nanoTime();
+        http.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> {
+                    if (failure != null || response.statusCode() >= 400) {
+                        errors.incrementAndGet();
+                        firstError.compareAndSet(null, failure != null ? failure.toString()
+                                : "HTTP " + response.statusCode());
+                    } else {
+                        log.add(System.nanoTime() - start);
+                    }
+                    loop(http, request, deadline, log, errors, firstError, done);
+                });
+    }
+
+    // Latencies of a single client, only its own callbacks write to it
+    private static final class LatencyLog {
+        private long[] values = new long[256];
+        private int size;
+
+        void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class Result {
+        private final long[] latencies; // sorted, nanoseconds
+        private final long errors;
+        private final String firstError;
+
+        Result(long[] latencies, long errors, String firstError) {
+            this.latencies = latencies;
+            this.errors = errors;
+            this.firstError = firstError;
+        }
+
+        double percentile(double p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.min(latencies.length - 1, Math.ceil(p * latencies.length) - 1);
+            return latencies[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.andy.application.MitchellOA;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// GET /vehicles response bodies in every format the API serves: encode and decode time per list.
+// The payload sizes, raw and gzip compressed, are printed once per trial
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VehicleWireFormatBenchmark {
+    @Param({"100", "10000"})
+    private int size;
+
+    @Param({"json", "smile", "cbor", "protobuf"})
+    private String format;
+
+    private List<Vehicle> vehicles;
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        vehicles = VehicleDataset.generate(size, 42);
+        for (int i = 0; i < vehicles.size(); i++) {
+            vehicles.get(i).setId(i + 1);
+        }
+
+        ObjectMapper mapper;
+        switch (format) {
+            case "smile":
+                mapper = new ObjectMapper(new SmileFactory());
+                break;
+            case "cbor":
+                mapper = new ObjectMapper(new CBORFactory());
+                break;
+            default:
+                mapper = new ObjectMapper();
+        }
+        writer = mapper.writerFor(new TypeReference<List<Vehicle>>() {});
+        reader = mapper.readerFor(new TypeReference<List<Vehicle>>() {});
+
+        encoded = serialize();
+        System.out.printf("%n%s, %d vehicles: %d bytes, %d bytes gzip%n", format, size, encoded.length,
+                gzip(encoded).length);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        if (format.equals("protobuf")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            VehicleProtobuf.writeList(vehicles, out);
+            return out.toByteArray();
+        }
+        return writer.writeValueAsBytes(vehicles);
+    }
+
+    @Benchmark
+    public List<Vehicle> deserialize() throws IOException {
+        if (format.equals("protobuf")) {
+            return VehicleProtobuf.readList(new ByteArrayInputStream(encoded));
+        }
+        return reader.readValue(encoded);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
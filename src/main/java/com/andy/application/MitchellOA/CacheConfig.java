@@ -0,0 +1,79 @@
+package com.andy.application.MitchellOA;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.interceptor.CacheResolver;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+// Caches are Caffeine backed, see spring.cache.* and vehicles.*.cache in application.properties
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String VEHICLES = "vehicles";
+    public static final String VEHICLE_SEARCHES = "vehicleSearches";
+    public static final String VEHICLE_STATS = "vehicleStats";
+    public static final String VEHICLES_RESOLVER = "vehicleCacheResolver";
+
+    /* The by-ID cache that VehicleRepository.findById fills and VehicleCacheInvalidator evicts from. The Caffeine
+       cache itself (and its metrics and evictions) stays the one the cache manager made */
+    @Bean
+    public DetachedVehicleCache vehicleCache(CacheManager cacheManager) {
+        return new DetachedVehicleCache(cacheManager.getCache(VEHICLES));
+    }
+
+    @Bean(VEHICLES_RESOLVER)
+    public CacheResolver vehicleCacheResolver(DetachedVehicleCache vehicleCache) {
+        Collection<Cache> vehicles = List.of(vehicleCache);
+        return context -> vehicles;
+    }
+
+    /* Search results are bounded by the total number of cached rows, not by the number of searches */
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> vehicleSearchCacheCustomizer(
+            @Value("${vehicles.search.cache.max-rows:100000}") long maxRows,
+            @Value("${vehicles.search.cache.ttl:60s}") Duration ttl) {
+        return cacheManager -> cacheManager.registerCustomCache(VEHICLE_SEARCHES, Caffeine.newBuilder()
+                .maximumWeight(maxRows)
+                .weigher(VehicleSearchCache::weigh)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build());
+    }
+
+    /* Facet counts are kept only briefly, a ttl of 0 turns the cache off */
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> vehicleStatsCacheCustomizer(
+            @Value("${vehicles.stats.cache.max-size:1000}") long maxSize,
+            @Value("${vehicles.stats.cache.ttl:5s}") Duration ttl) {
+        return cacheManager -> cacheManager.registerCustomCache(VEHICLE_STATS, Caffeine.newBuilder()
+                .maximumSize(ttl.isZero() ? 0 : maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build());
+    }
+
+    /* Hibernate's second-level cache gets a JCache CacheManager of its own. The provider's default one is shared
+       by the whole JVM, so two application contexts would hand out each other's entities. Regions are still
+       configured in application.conf, Hibernate closes the manager with the session factory */
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheManagerCustomizer() {
+        return properties -> properties.put("hibernate.javax.cache.cache_manager",
+                Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                        .getCacheManager(URI.create("vehicles-" + UUID.randomUUID()), getClass().getClassLoader()));
+    }
+}
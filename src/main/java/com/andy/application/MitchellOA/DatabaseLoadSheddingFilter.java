@@ -0,0 +1,81 @@
+package com.andy.application.MitchellOA;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.function.IntSupplier;
+
+// Fails /vehicles requests fast with 503 while too many threads are already waiting for a JDBC connection.
+// Queueing more of them behind the pool only adds latency, and the ones that are waiting get their
+// connection sooner. The wait queue is the one Hikari reports as hikaricp.connections.pending
+@Component
+@Profile("!reactive")
+@Order(Ordered.HIGHEST_PRECEDENCE + 20)
+@ConditionalOnProperty(name = "vehicles.shedding.enabled", havingValue = "true")
+public class DatabaseLoadSheddingFilter extends OncePerRequestFilter {
+    private final IntSupplier pendingConnections;
+    private final int maxPendingConnections;
+    private final Counter shed;
+
+    @Autowired
+    public DatabaseLoadSheddingFilter(DataSource dataSource,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${vehicles.shedding.max-pending-connections:20}")
+                                              int maxPendingConnections) throws SQLException {
+        this(pendingConnections(dataSource.unwrap(HikariDataSource.class)), meterRegistry, maxPendingConnections);
+    }
+
+    DatabaseLoadSheddingFilter(IntSupplier pendingConnections, MeterRegistry meterRegistry,
+                               int maxPendingConnections) {
+        this.pendingConnections = pendingConnections;
+        this.maxPendingConnections = maxPendingConnections;
+        this.shed = Counter.builder("vehicles.shedding.rejected")
+                .description("Requests answered 503 because the connection pool queue was full")
+                .register(meterRegistry);
+    }
+
+    // the pool is created on the first connection, nothing waits before that
+    private static IntSupplier pendingConnections(HikariDataSource dataSource) {
+        return () -> {
+            HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+            return pool == null ? 0 : pool.getThreadsAwaitingConnection();
+        };
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getServletPath().startsWith("/vehicles");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (pendingConnections.getAsInt() < maxPendingConnections) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        shed.increment();
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Database busy");
+    }
+}
@@ -0,0 +1,24 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Default engine: every search goes to the store, one indexed SQL query with the JPA store
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "vehicles.search.engine", havingValue = "database", matchIfMissing = true)
+public class DatabaseVehicleSearchEngine implements VehicleSearchEngine {
+    private final VehicleStore vehicleStore;
+
+    public DatabaseVehicleSearchEngine(VehicleStore vehicleStore) {
+        this.vehicleStore = vehicleStore;
+    }
+
+    @Override
+    public List<Vehicle> findPage(VehicleQuery query, int afterId, int limit) {
+        return vehicleStore.findPage(query, afterId, limit);
+    }
+}
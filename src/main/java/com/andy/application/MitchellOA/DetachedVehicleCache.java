@@ -0,0 +1,130 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.cache.Cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// The by-ID cache, storing and handing out copies of the vehicles. A caller that changes the vehicle it got
+// (Spring Data REST's PUT does, before the write commits or fails) only changes its own copy, never
+// what concurrent readers get from the cache.
+// A reader can load a row just before a write commits and put it after the write evicted the id. Every evict
+// bumps a generation for its id, and a load that saw the generation move takes its row out again
+public class DetachedVehicleCache implements Cache {
+    // generations are per stripe of ids, a write to one id only costs the few that share its stripe a put
+    private static final int STRIPES = 1024;
+
+    private final Cache delegate;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    public DetachedVehicleCache(Cache delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper wrapper = delegate.get(key);
+        return wrapper == null ? null : () -> copy(wrapper.get());
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return type.cast(copy(delegate.get(key, type)));
+    }
+
+    /* Used by @Cacheable(sync = true). A missing vehicle (null) is not cached.
+       The loaded value is the caller's own, a copy goes into the cache */
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = delegate.get(key);
+        if (cached != null) {
+            @SuppressWarnings("unchecked")
+            T value = (T) copy(cached.get());
+            return value;
+        }
+
+        int stripe = stripe(key);
+        long generation = generations.get(stripe);
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        if (value != null) {
+            delegate.put(key, copy(value));
+            // checked after the put: an evict either bumped the generation before this or removes the row itself
+            if (generations.get(stripe) != generation) {
+                delegate.evict(key);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, copy(value));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, copy(value));
+        return existing == null ? null : () -> copy(existing.get());
+    }
+
+    @Override
+    public void evict(Object key) {
+        generations.incrementAndGet(stripe(key));
+        delegate.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        generations.incrementAndGet(stripe(key));
+        return delegate.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        bumpAll();
+        delegate.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        bumpAll();
+        return delegate.invalidate();
+    }
+
+    private static int stripe(Object key) {
+        return key.hashCode() & (STRIPES - 1);
+    }
+
+    private void bumpAll() {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            generations.incrementAndGet(stripe);
+        }
+    }
+
+    // A detached copy of a vehicle, anything else as it is
+    private static Object copy(Object value) {
+        if (!(value instanceof Vehicle)) {
+            return value;
+        }
+        Vehicle vehicle = (Vehicle) value;
+        Vehicle copy = new Vehicle(vehicle.getYear(), vehicle.getMake(), vehicle.getModel());
+        copy.setId(vehicle.getId());
+        copy.setVersion(vehicle.getVersion());
+        return copy;
+    }
+}
@@ -0,0 +1,148 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Default store: H2 through JPA. As a @Repository its persistence exceptions are translated, a failed
+// version check at flush is an ObjectOptimisticLockingFailureException. Change events come from
+// VehicleEntityListener, except for patches which are a single UPDATE statement no entity listener sees
+@Repository
+@Profile("!reactive")
+@ConditionalOnProperty(name = "vehicles.store", havingValue = "jpa", matchIfMissing = true)
+public class JpaVehicleStore implements VehicleStore {
+    private final VehicleRepository vehicleRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+    private final int fetchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public JpaVehicleStore(VehicleRepository vehicleRepository,
+                           ApplicationEventPublisher eventPublisher,
+                           @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize,
+                           @Value("${vehicles.export.fetch-size:500}") int fetchSize) {
+        this.vehicleRepository = vehicleRepository;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public Optional<Vehicle> findById(int id) {
+        return vehicleRepository.findById(id);
+    }
+
+    @Override
+    public boolean existsById(int id) {
+        return vehicleRepository.existsById(id);
+    }
+
+    @Override
+    public List<Vehicle> findAllById(Collection<Integer> ids) {
+        return vehicleRepository.findAllById(ids);
+    }
+
+    @Override
+    public List<Vehicle> findPage(VehicleQuery query, int afterId, int limit) {
+        return vehicleRepository.findPage(query.toSpecification(), afterId, limit);
+    }
+
+    @Override
+    public List<VehicleFields> findPageFields(VehicleQuery query, Set<String> fields, int afterId, int limit) {
+        return vehicleRepository.findPageFields(query.toSpecification(), fields, afterId, limit);
+    }
+
+    @Override
+    public VehicleStats findStats(VehicleQuery query, int yearBucket) {
+        return vehicleRepository.findStats(query, yearBucket);
+    }
+
+    // the cursor needs an open transaction for as long as it is read
+    @Override
+    @Transactional(readOnly = true)
+    public void scan(VehicleQuery query, Consumer<Vehicle> action) {
+        try (Stream<Vehicle> vehicles = vehicleRepository.streamAll(query.toSpecification(), fetchSize)) {
+            vehicles.forEach(action);
+        }
+    }
+
+    // Rows are flushed every batchSize items so Hibernate sends them as JDBC batches, and the
+    // persistence context is cleared so a big batch does not pile up.
+    // Ids come from the pooled sequence, so persisting does not hit the database yet
+    @Override
+    @Transactional
+    public void insertAll(List<Vehicle> vehicles) {
+        int unflushed = 0;
+        for (Vehicle vehicle : vehicles) {
+            vehicleRepository.save(vehicle);
+            if (++unflushed == batchSize) {
+                flushAndClear();
+                unflushed = 0;
+            }
+        }
+        flushAndClear();
+    }
+
+    // Vehicles read in the caller's transaction are still managed, dirty checking turns the changes
+    // into batched UPDATE statements. Detached ones are merged, the version check is the same
+    // Single rows go straight to save(), its own transaction, there is nothing to batch
+    @Override
+    public void insert(Vehicle vehicle) {
+        vehicleRepository.save(vehicle);
+    }
+
+    @Override
+    public Vehicle update(Vehicle vehicle) {
+        return vehicleRepository.save(vehicle);
+    }
+
+    @Override
+    @Transactional
+    public List<Vehicle> updateAll(List<Vehicle> vehicles) {
+        List<Vehicle> saved = vehicleRepository.saveAll(vehicles);
+        flushAndClear();
+        return saved;
+    }
+
+    @Override
+    @Transactional
+    public OptionalLong patch(int id, Integer year, String make, String model, long expectedVersion) {
+        if (vehicleRepository.patch(id, year, make, model, expectedVersion) == 0) {
+            return OptionalLong.empty();
+        }
+        // with If-Match the new version is known, otherwise it is read back
+        long version = expectedVersion >= 0 ? expectedVersion + 1 : vehicleRepository.findVersionById(id);
+        eventPublisher.publishEvent(VehicleChangedEvent.patched(id, year, make, model, version));
+        return OptionalLong.of(version);
+    }
+
+    // The managed row rather than findById's cached copy: merging that one would fail its version check
+    // after any write since it was cached
+    @Override
+    @Transactional
+    public boolean deleteById(int id) {
+        Vehicle vehicle = entityManager.find(Vehicle.class, id);
+        if (vehicle == null) {
+            return false;
+        }
+        entityManager.remove(vehicle);
+        return true;
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
@@ -0,0 +1,23 @@
+package com.andy.application.MitchellOA;
+
+import org.junit.BeforeClass;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+
+// Every VehicleControllerTest case again, with the /vehicles endpoints on the log store
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"vehicles.store=log", "vehicles.store.log.directory=target/log-store-test",
+                "vehicles.store.log.segment-size=1MB"})
+public class LogStoreVehicleControllerTest extends VehicleControllerTest {
+    @BeforeClass
+    public static void beforeAll() throws IOException {
+        FileSystemUtils.deleteRecursively(Paths.get("target/log-store-test"));
+    }
+}
@@ -0,0 +1,491 @@
+package com.andy.application.MitchellOA;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Embedded log-structured store (vehicles.store=log). Every write is a record appended to a VehicleLog,
+// an in-memory map from id to the location of its latest record answers findById with one read from the
+// mapped file. The map is rebuilt by replaying the log at startup. Writes wait for fsync (group commit,
+// see VehicleLog.sync) before they return and publish their change event. Events are published in log order,
+// so listeners (the change outbox too) see two writes of a vehicle in the order they were made.
+// Old segments are compacted in the background, one at a time: the live records of a mostly dead segment
+// are copied to the end of the log and the segment deleted. Searches scan the map in id order, there is no
+// secondary index here, vehicles.search.engine=index adds one
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "vehicles.store", havingValue = "log")
+public class LogVehicleStore implements VehicleStore, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(LogVehicleStore.class);
+    // copies appended per hold of the write lock during compaction
+    private static final int COMPACTION_BATCH = 256;
+
+    private final VehicleLog log;
+    private final ApplicationEventPublisher eventPublisher;
+    private final double compactionThreshold;
+
+    // id -> location of the vehicle's current record, in id order for paging
+    private final ConcurrentSkipListMap<Integer, Long> index = new ConcurrentSkipListMap<>();
+    // bytes per segment that still belong to a current record, changed under writeLock, read without it
+    private final Map<Integer, Long> liveBytes = new ConcurrentHashMap<>();
+    // ids with a PUT record per segment, overwritten ones included, changed under writeLock. Only the active
+    // segment's set still grows
+    private final Map<Integer, RoaringBitmap> putIds = new ConcurrentHashMap<>();
+    // one writer at a time, reads take no lock
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private int nextId = 1;
+    // Place of each write in the log, taken under writeLock. After its fsync a write waits for the ones before
+    // it to publish, the fsyncs themselves still overlap
+    private long nextTicket;
+    private long published; // guarded by publishLock
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private final Condition publishTurn = publishLock.newCondition();
+
+    private final ScheduledExecutorService compactor;
+
+    @Autowired
+    public LogVehicleStore(ApplicationEventPublisher eventPublisher,
+                           MeterRegistry meterRegistry,
+                           @Value("${vehicles.store.log.directory:data/vehicles}") String directory,
+                           @Value("${vehicles.store.log.segment-size:64MB}") DataSize segmentSize,
+                           @Value("${vehicles.store.log.fsync:true}") boolean fsync,
+                           @Value("${vehicles.store.log.compaction-interval:60s}") Duration compactionInterval,
+                           @Value("${vehicles.store.log.compaction-threshold:0.5}") double compactionThreshold)
+            throws IOException {
+        this(eventPublisher, Paths.get(directory), (int) segmentSize.toBytes(), fsync, compactionThreshold);
+
+        Gauge.builder("vehicles.store.log.segments", this, store -> store.log.segmentNumbers().size())
+                .description("Segment files of the vehicle log")
+                .register(meterRegistry);
+        Gauge.builder("vehicles.store.log.live.ratio", this, LogVehicleStore::liveRatio)
+                .description("Share of the closed segments' bytes that belong to current records")
+                .register(meterRegistry);
+        compactor.scheduleWithFixedDelay(this::compactIfNeeded, compactionInterval.toMillis(),
+                compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    LogVehicleStore(ApplicationEventPublisher eventPublisher, Path directory, int segmentSize, boolean fsync,
+                    double compactionThreshold) throws IOException {
+        this.eventPublisher = eventPublisher;
+        this.compactionThreshold = compactionThreshold;
+        this.log = new VehicleLog(directory, segmentSize, fsync);
+        this.log.replay(this::apply);
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vehicle-log-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Replay: the last record of an id wins
+    private void apply(long location, byte type, Vehicle vehicle) {
+        switch (type) {
+            case VehicleLog.PUT:
+                release(index.put(vehicle.getId(), location));
+                addLive(location);
+                addPut(location, vehicle.getId());
+                nextId = Math.max(nextId, vehicle.getId() + 1);
+                break;
+            case VehicleLog.DELETE:
+                release(index.remove(vehicle.getId()));
+                nextId = Math.max(nextId, vehicle.getId() + 1);
+                break;
+            case VehicleLog.NEXT_ID:
+                nextId = Math.max(nextId, vehicle.getId());
+                break;
+            default:
+                throw new IllegalStateException("Unknown record type " + type);
+        }
+    }
+
+    @Override
+    public Optional<Vehicle> findById(int id) {
+        return Optional.ofNullable(read(id));
+    }
+
+    @Override
+    public boolean existsById(int id) {
+        return index.containsKey(id);
+    }
+
+    @Override
+    public List<Vehicle> findAllById(Collection<Integer> ids) {
+        List<Vehicle> vehicles = new ArrayList<>(ids.size());
+        for (Integer id : new LinkedHashSet<>(ids)) {
+            Vehicle vehicle = read(id);
+            if (vehicle != null) {
+                vehicles.add(vehicle);
+            }
+        }
+        return vehicles;
+    }
+
+    @Override
+    public List<Vehicle> findPage(VehicleQuery query, int afterId, int limit) {
+        List<Vehicle> page = new ArrayList<>();
+        for (Integer id : index.tailMap(afterId, false).keySet()) {
+            if (page.size() == limit) {
+                break;
+            }
+            Vehicle vehicle = read(id);
+            if (vehicle != null && query.matches(vehicle)) {
+                page.add(vehicle);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public List<VehicleFields> findPageFields(VehicleQuery query, Set<String> fields, int afterId, int limit) {
+        List<VehicleFields> page = new ArrayList<>();
+        for (Vehicle vehicle : findPage(query, afterId, limit)) {
+            VehicleFields row = new VehicleFields(vehicle.getId());
+            if (fields.contains("year")) {
+                row.setYear(vehicle.getYear());
+            }
+            if (fields.contains("make")) {
+                row.setMake(vehicle.getMake());
+            }
+            if (fields.contains("model")) {
+                row.setModel(vehicle.getModel());
+            }
+            page.add(row);
+        }
+        return page;
+    }
+
+    @Override
+    public VehicleStats findStats(VehicleQuery query, int yearBucket) {
+        VehicleStats stats = new VehicleStats();
+        scan(query, vehicle -> stats.add(vehicle.getMake(), vehicle.getModel(), vehicle.getYear(), 1, yearBucket));
+        return stats;
+    }
+
+    @Override
+    public void scan(VehicleQuery query, Consumer<Vehicle> action) {
+        for (Integer id : index.keySet()) {
+            Vehicle vehicle = read(id);
+            if (vehicle != null && query.matches(vehicle)) {
+                action.accept(vehicle);
+            }
+        }
+    }
+
+    @Override
+    public void insertAll(List<Vehicle> vehicles) {
+        long end;
+        long ticket;
+        writeLock.lock();
+        try {
+            for (Vehicle vehicle : vehicles) {
+                vehicle.setId(nextId++);
+                vehicle.setVersion(0);
+                put(vehicle);
+            }
+            end = log.end();
+            ticket = nextTicket++;
+        } finally {
+            writeLock.unlock();
+        }
+        syncAndPublish(ticket, end, VehicleChangedEvent.Type.CREATED, vehicles);
+    }
+
+    @Override
+    public List<Vehicle> updateAll(List<Vehicle> vehicles) {
+        long end;
+        long ticket;
+        writeLock.lock();
+        try {
+            // all versions are checked before anything is written
+            for (Vehicle vehicle : vehicles) {
+                Vehicle current = read(vehicle.getId());
+                if (current == null || current.getVersion() != vehicle.getVersion()) {
+                    throw new ObjectOptimisticLockingFailureException(Vehicle.class, vehicle.getId());
+                }
+            }
+            for (Vehicle vehicle : vehicles) {
+                vehicle.setVersion(vehicle.getVersion() + 1);
+                put(vehicle);
+            }
+            end = log.end();
+            ticket = nextTicket++;
+        } finally {
+            writeLock.unlock();
+        }
+        syncAndPublish(ticket, end, VehicleChangedEvent.Type.UPDATED, vehicles);
+        return vehicles;
+    }
+
+    // The whole row is at hand here, so the event is a full UPDATED rather than PATCHED
+    @Override
+    public OptionalLong patch(int id, Integer year, String make, String model, long expectedVersion) {
+        Vehicle vehicle;
+        long end;
+        long ticket;
+        writeLock.lock();
+        try {
+            vehicle = read(id);
+            if (vehicle == null || (expectedVersion >= 0 && vehicle.getVersion() != expectedVersion)) {
+                return OptionalLong.empty();
+            }
+            if (year != null) {
+                vehicle.setYear(year);
+            }
+            if (make != null) {
+                vehicle.setMake(make);
+            }
+            if (model != null) {
+                vehicle.setModel(model);
+            }
+            vehicle.setVersion(vehicle.getVersion() + 1);
+            put(vehicle);
+            end = log.end();
+            ticket = nextTicket++;
+        } finally {
+            writeLock.unlock();
+        }
+        syncAndPublish(ticket, end, VehicleChangedEvent.Type.UPDATED, List.of(vehicle));
+        return OptionalLong.of(vehicle.getVersion());
+    }
+
+    @Override
+    public boolean deleteById(int id) {
+        Vehicle vehicle;
+        long end;
+        long ticket;
+        writeLock.lock();
+        try {
+            vehicle = read(id);
+            if (vehicle == null) {
+                return false;
+            }
+            // the tombstone is not live itself, it only hides the older records of the id
+            release(index.remove(id));
+            log.append(VehicleLog.DELETE, vehicle);
+            end = log.end();
+            ticket = nextTicket++;
+        } finally {
+            writeLock.unlock();
+        }
+        syncAndPublish(ticket, end, VehicleChangedEvent.Type.DELETED, List.of(vehicle));
+        return true;
+    }
+
+    // Wait for the log to be durable up to end, then publish the write's events once every earlier ticket
+    // has. A failed fsync publishes nothing but still passes the turn on. Listeners must not write to this store
+    private void syncAndPublish(long ticket, long end, VehicleChangedEvent.Type type, List<Vehicle> vehicles) {
+        boolean synced = false;
+        try {
+            log.sync(end);
+            synced = true;
+        } finally {
+            publishLock.lock();
+            try {
+                while (published != ticket) {
+                    publishTurn.awaitUninterruptibly();
+                }
+                try {
+                    if (synced) {
+                        for (Vehicle vehicle : vehicles) {
+                            eventPublisher.publishEvent(new VehicleChangedEvent(type, vehicle));
+                        }
+                    }
+                } finally {
+                    published++;
+                    publishTurn.signalAll();
+                }
+            } finally {
+                publishLock.unlock();
+            }
+        }
+    }
+
+    /* Compact every closed segment whose own share of live bytes is below the threshold, one segment
+       at a time. Runs on a timer */
+    void compactIfNeeded() {
+        try {
+            for (int segment : log.segmentNumbers()) {
+                if (segment < log.activeSegment() && liveRatio(segment) < compactionThreshold) {
+                    compact(segment);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Vehicle log compaction failed", e);
+        }
+    }
+
+    /* Copy the records of a closed segment that still count to the end of the log, then delete it.
+       Finding and reading them takes no lock, writers only wait while a batch of copies is appended.
+       A record the index no longer points at by then was overwritten or deleted meanwhile and stays behind */
+    void compact(int segment) {
+        // a delete only has to stay while an older segment still holds a PUT of its id. Those segments are
+        // closed, their sets no longer change once read under the lock
+        List<RoaringBitmap> older = new ArrayList<>();
+        writeLock.lock();
+        try {
+            putIds.forEach((number, ids) -> {
+                if (number < segment) {
+                    older.add(ids);
+                }
+            });
+        } finally {
+            writeLock.unlock();
+        }
+
+        List<Long> locations = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        log.scan(segment, (location, type, vehicle) -> {
+            boolean keep = type == VehicleLog.PUT
+                    ? Long.valueOf(location).equals(index.get(vehicle.getId()))
+                    : type == VehicleLog.DELETE && older.stream().anyMatch(put -> put.contains(vehicle.getId()));
+            if (keep) {
+                locations.add(location);
+                ids.add(vehicle.getId());
+            }
+        });
+
+        for (int from = 0; from < locations.size(); from += COMPACTION_BATCH) {
+            int to = Math.min(from + COMPACTION_BATCH, locations.size());
+            List<byte[]> records = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                records.add(log.raw(locations.get(i)));
+            }
+            writeLock.lock();
+            try {
+                for (int i = from; i < to; i++) {
+                    Long location = locations.get(i);
+                    if (log.type(location) == VehicleLog.DELETE) {
+                        log.copy(records.get(i - from));
+                    } else if (location.equals(index.get(ids.get(i)))) {
+                        long moved = log.copy(records.get(i - from));
+                        release(index.put(ids.get(i), moved));
+                        addLive(moved);
+                        addPut(moved, ids.get(i));
+                    }
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        long end;
+        writeLock.lock();
+        try {
+            // deleted vehicles at the top of the id range leave no record behind, keep their ids used
+            log.append(VehicleLog.NEXT_ID, idRecord(nextId));
+            end = log.end();
+        } finally {
+            writeLock.unlock();
+        }
+        // the copies are on disk before the originals go. Nothing in the index points into the segment anymore
+        log.sync(end);
+        try {
+            log.delete(segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        liveBytes.remove(segment);
+        putIds.remove(segment);
+    }
+
+    /* Live bytes over used bytes of the segments before the active one, 1 when there are none.
+       Takes no lock, so the gauge reading it never waits for a writer */
+    double liveRatio() {
+        long used = 0;
+        long live = 0;
+        int active = log.activeSegment();
+        for (int segment : log.segmentNumbers()) {
+            if (segment < active) {
+                used += log.used(segment);
+                live += liveBytes.getOrDefault(segment, 0L);
+            }
+        }
+        return used == 0 ? 1 : (double) live / used;
+    }
+
+    private double liveRatio(int segment) {
+        int used = log.used(segment);
+        return used == 0 ? 1 : (double) liveBytes.getOrDefault(segment, 0L) / used;
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        compactor.shutdownNow();
+        writeLock.lock();
+        try {
+            log.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void put(Vehicle vehicle) {
+        long location = log.append(VehicleLog.PUT, vehicle);
+        release(index.put(vehicle.getId(), location));
+        addLive(location);
+        addPut(location, vehicle.getId());
+    }
+
+    // A read can race with compaction moving the record, the index then already has the new location
+    private Vehicle read(int id) {
+        while (true) {
+            Long location = index.get(id);
+            if (location == null) {
+                return null;
+            }
+            try {
+                return log.read(location);
+            } catch (IllegalStateException e) {
+                if (location.equals(index.get(id))) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void addLive(long location) {
+        liveBytes.merge(VehicleLog.segmentOf(location), (long) log.size(location), Long::sum);
+    }
+
+    private void addPut(long location, int id) {
+        putIds.computeIfAbsent(VehicleLog.segmentOf(location), segment -> new RoaringBitmap()).add(id);
+    }
+
+    private void release(Long location) {
+        if (location != null) {
+            liveBytes.merge(VehicleLog.segmentOf(location), (long) -log.size(location), Long::sum);
+        }
+    }
+
+    private static Vehicle idRecord(int id) {
+        Vehicle vehicle = new Vehicle();
+        vehicle.setId(id);
+        return vehicle;
+    }
+}
@@ -0,0 +1,262 @@
+package com.andy.application.MitchellOA;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+
+// LogVehicleStore on its own, reopened on the same directory to check what survives a restart
+public class LogVehicleStoreTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    private final List<Object> events = new ArrayList<>();
+    private Path directory;
+    private LogVehicleStore store;
+
+    @Before
+    public void beforeEach() throws IOException {
+        directory = Files.createTempDirectory("vehicle-log");
+        store = open();
+    }
+
+    @After
+    public void afterEach() throws IOException {
+        store.destroy();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    private LogVehicleStore open() throws IOException {
+        return new LogVehicleStore(events::add, directory, SEGMENT_SIZE, true, 0.5);
+    }
+
+    private LogVehicleStore reopen() throws IOException {
+        store.destroy();
+        store = open();
+        return store;
+    }
+
+    @Test
+    public void testWritesSurviveReopen() throws IOException {
+        Vehicle kept = new Vehicle(2010, "Toyota", "Camry");
+        Vehicle deleted = new Vehicle(2011, "Honda", "Civic");
+        store.insertAll(List.of(kept, deleted));
+        Assert.assertEquals(1, kept.getId());
+        Assert.assertEquals(2, deleted.getId());
+
+        kept.setModel("Corolla");
+        store.update(kept);
+        Assert.assertEquals(2, store.patch(kept.getId(), 2012, null, null, 1).getAsLong());
+        Assert.assertTrue(store.deleteById(deleted.getId()));
+        Assert.assertEquals(5, events.size());
+
+        reopen();
+        Vehicle found = store.findById(kept.getId()).orElseThrow();
+        Assert.assertEquals(2012, found.getYear());
+        Assert.assertEquals("Toyota", found.getMake());
+        Assert.assertEquals("Corolla", found.getModel());
+        Assert.assertEquals(2, found.getVersion());
+        Assert.assertFalse(store.existsById(deleted.getId()));
+
+        // the deleted id is not handed out again
+        Vehicle next = new Vehicle(2013, "Kia", "Soul");
+        store.insert(next);
+        Assert.assertEquals(3, next.getId());
+    }
+
+    @Test
+    public void testVersionConflictWritesNothing() {
+        Vehicle first = new Vehicle(2010, "Toyota", "Camry");
+        Vehicle second = new Vehicle(2011, "Honda", "Civic");
+        store.insertAll(List.of(first, second));
+
+        first.setModel("Corolla");
+        Vehicle stale = new Vehicle(2011, "Honda", "Accord");
+        stale.setId(second.getId());
+        stale.setVersion(5);
+        try {
+            store.updateAll(List.of(first, stale));
+            Assert.fail();
+        } catch (ObjectOptimisticLockingFailureException e) {
+            // expected
+        }
+        Assert.assertEquals("Camry", store.findById(first.getId()).orElseThrow().getModel());
+        Assert.assertTrue(store.patch(second.getId(), null, null, "Accord", 5).isEmpty());
+        Assert.assertTrue(store.patch(99, null, null, "Accord", -1).isEmpty());
+    }
+
+    @Test
+    public void testEventsArePublishedInLogOrder() throws InterruptedException {
+        Vehicle vehicle = new Vehicle(2010, "Toyota", "Camry");
+        store.insert(vehicle);
+
+        // concurrent patches of one vehicle, their fsyncs overlap
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 25; i++) {
+                    store.patch(vehicle.getId(), null, null, "Corolla", -1);
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        Assert.assertEquals(101, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            Assert.assertEquals(i, ((VehicleChangedEvent) events.get(i)).getVersion());
+        }
+    }
+
+    @Test
+    public void testCompactionDropsDeadRecords() throws IOException {
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            vehicles.add(new Vehicle(2000 + i % 50, "Make" + i, "Model" + i));
+        }
+        store.insertAll(vehicles);
+        // rewrite everything a few times, only the last version of each is live
+        for (int round = 0; round < 3; round++) {
+            for (Vehicle vehicle : vehicles) {
+                vehicle.setModel("Model" + vehicle.getId() + "-" + round);
+            }
+            store.updateAll(vehicles);
+        }
+        for (int id = 101; id <= 200; id++) {
+            store.deleteById(id);
+        }
+
+        long segmentFiles = countSegmentFiles();
+        Assert.assertTrue(store.liveRatio() < 0.5);
+        store.compactIfNeeded();
+        Assert.assertTrue(countSegmentFiles() < segmentFiles);
+
+        reopen();
+        Assert.assertEquals("Model100-2", store.findById(100).orElseThrow().getModel());
+        Assert.assertFalse(store.existsById(101));
+        Vehicle next = new Vehicle(2020, "Kia", "Soul");
+        store.insert(next);
+        Assert.assertEquals(201, next.getId());
+    }
+
+    @Test
+    public void testCompactionKeepsDeletesOfOlderSegments() throws IOException {
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            vehicles.add(new Vehicle(2000 + i % 50, "Make" + i, "Model" + i));
+        }
+        store.insertAll(vehicles);
+        // the first segment stays mostly live, the delete lands in a later one that only holds rewrites
+        Assert.assertTrue(store.deleteById(1));
+        Vehicle rewritten = vehicles.get(99);
+        for (int i = 0; i < 200; i++) {
+            rewritten.setModel("Model" + i);
+            store.update(rewritten);
+        }
+
+        store.compactIfNeeded();
+        Assert.assertTrue(Files.exists(directory.resolve("00000001.log")));
+
+        reopen();
+        Assert.assertFalse(store.existsById(1));
+        Assert.assertEquals("Model199", store.findById(100).orElseThrow().getModel());
+    }
+
+    @Test
+    public void testCompactionDropsDeletesNoOlderSegmentNeeds() throws IOException {
+        // the first segments stay live, the deleted vehicles' records are all in later ones
+        store.insertAll(vehicles("Kept"));
+        List<Vehicle> deleted = vehicles("Gone");
+        store.insertAll(deleted);
+        for (Vehicle vehicle : deleted) {
+            store.deleteById(vehicle.getId());
+        }
+        store.insertAll(vehicles("Filler"));
+        store.compactIfNeeded();
+        store.compactIfNeeded();
+
+        // no delete is carried forward, the log is as big as one that never had the deleted vehicles
+        Path reference = Files.createTempDirectory("vehicle-log");
+        LogVehicleStore referenceStore = new LogVehicleStore(events::add, reference, SEGMENT_SIZE, true, 0.5);
+        try {
+            referenceStore.insertAll(vehicles("Kept"));
+            referenceStore.insertAll(vehicles("Filler"));
+            try (Stream<Path> files = Files.list(reference)) {
+                Assert.assertEquals(files.count(), countSegmentFiles());
+            }
+        } finally {
+            referenceStore.destroy();
+            FileSystemUtils.deleteRecursively(reference);
+        }
+
+        reopen();
+        Assert.assertFalse(store.existsById(deleted.get(0).getId()));
+        Assert.assertEquals("Kept0", store.findById(1).orElseThrow().getMake());
+    }
+
+    private static List<Vehicle> vehicles(String make) {
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            vehicles.add(new Vehicle(2000 + i % 50, make + i, "Model" + i));
+        }
+        return vehicles;
+    }
+
+    @Test
+    public void testTornRecordIsCutOff() throws IOException {
+        store.insertAll(List.of(new Vehicle(2010, "Toyota", "Camry"), new Vehicle(2011, "Honda", "Civic")));
+        store.destroy();
+
+        // a crash half way through writing a third record: a length and some of its bytes, no valid checksum
+        try (RandomAccessFile file = new RandomAccessFile(lastSegmentFile().toFile(), "rw")) {
+            int end = 0;
+            while (true) {
+                file.seek(end);
+                int length = file.readInt();
+                if (length == 0) {
+                    break;
+                }
+                end += 8 + length;
+            }
+            file.seek(end);
+            file.writeInt(40);
+            file.writeInt(12345);
+            file.write(new byte[]{1, 0, 0, 0, 3});
+        }
+
+        store = open();
+        Assert.assertEquals(2, store.findAllById(List.of(1, 2, 3)).size());
+        Vehicle next = new Vehicle(2012, "Kia", "Soul");
+        store.insert(next);
+        Assert.assertEquals(3, next.getId());
+
+        reopen();
+        Assert.assertEquals("Soul", store.findById(3).orElseThrow().getModel());
+    }
+
+    private long countSegmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private Path lastSegmentFile() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.max(Comparator.naturalOrder()).orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.andy.application.MitchellOA;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+public class ReactiveVehicleApiTest {
+    // Auto inject Object instances
+    @Autowired
+    private WebTestClient webTestClient;
+
+    private Vehicle create(int year, String make, String model) {
+        return webTestClient.post().uri("/vehicles").bodyValue(new Vehicle(year, make, model))
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBody(Vehicle.class).returnResult().getResponseBody();
+    }
+
+    @Test
+    public void testCreateAndGetVehicleById() {
+        Vehicle created = create(2016, "Kia", "Sorrento");
+        Assert.assertTrue(created.getId() > 0);
+
+        Vehicle vehicle = webTestClient.get().uri("/vehicles/" + created.getId())
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBody(Vehicle.class).returnResult().getResponseBody();
+
+        Assert.assertEquals(2016, vehicle.getYear());
+        Assert.assertEquals("Kia", vehicle.getMake());
+        Assert.assertEquals("Sorrento", vehicle.getModel());
+    }
+
+    @Test
+    public void testCreateInvalidVehicle() {
+        webTestClient.post().uri("/vehicles").bodyValue(new Vehicle(1949, "Kia", ""))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.violations[0].rule").isEqualTo("YEAR_OUT_OF_RANGE")
+                .jsonPath("$.violations[1].field").isEqualTo("model");
+
+        webTestClient.get().uri("/vehicles/0").exchange().expectStatus().isNotFound(); // not saved
+    }
+
+    @Test
+    public void testFilterAndPageVehicles() {
+        for (int i = 0; i < 5; i++) {
+            create(2001 + i, "ReactiveMake", "ReactiveModel" + i);
+        }
+
+        List<Vehicle> vehicles = webTestClient.get().uri("/vehicles?make=ReactiveMake&yearStart=2002&yearEnd=2004")
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBodyList(Vehicle.class).returnResult().getResponseBody();
+        Assert.assertEquals(3, vehicles.size());
+
+        HttpHeaders headers = webTestClient.get().uri("/vehicles?make=ReactiveMake&limit=2")
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBodyList(Vehicle.class).hasSize(2)
+                .returnResult().getResponseHeaders();
+        Assert.assertTrue(headers.getFirst(HttpHeaders.LINK).contains("cursor=")); // next page link
+    }
+
+    @Test
+    public void testUpdateAndDeleteVehicle() {
+        Vehicle vehicle = create(2010, "Honda", "Civic");
+        vehicle.setModel("Accord");
+        vehicle.setYear(2051);
+        webTestClient.put().uri("/vehicles").bodyValue(vehicle)
+                .exchange()
+                .expectStatus().isBadRequest(); // invalid year, nothing is updated
+
+        vehicle.setYear(2011);
+        Vehicle updated = webTestClient.put().uri("/vehicles").bodyValue(vehicle)
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBody(Vehicle.class).returnResult().getResponseBody();
+        Assert.assertEquals("Accord", updated.getModel());
+        Assert.assertEquals(2011, updated.getYear());
+
+        webTestClient.delete().uri("/vehicles/" + vehicle.getId()).exchange().expectStatus().isAccepted();
+        webTestClient.get().uri("/vehicles/" + vehicle.getId()).exchange().expectStatus().isNotFound();
+        webTestClient.delete().uri("/vehicles/" + vehicle.getId()).exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    public void testConditionalUpdate() {
+        Vehicle vehicle = create(2012, "Mazda", "Miata");
+        String eTag = webTestClient.get().uri("/vehicles/" + vehicle.getId())
+                .exchange()
+                .expectStatus().isAccepted()
+                .returnResult(Vehicle.class).getResponseHeaders().getETag();
+        Assert.assertEquals("\"0\"", eTag);
+        webTestClient.get().uri("/vehicles/" + vehicle.getId()).ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isNotModified();
+
+        vehicle.setModel("MX-5");
+        webTestClient.put().uri("/vehicles").header(HttpHeaders.IF_MATCH, eTag).bodyValue(vehicle)
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+
+        // a second writer that read the same version loses
+        vehicle.setModel("Roadster");
+        webTestClient.put().uri("/vehicles").header(HttpHeaders.IF_MATCH, eTag).bodyValue(vehicle)
+                .exchange()
+                .expectStatus().isEqualTo(412);
+        Vehicle current = webTestClient.get().uri("/vehicles/" + vehicle.getId())
+                .exchange()
+                .expectBody(Vehicle.class).returnResult().getResponseBody();
+        Assert.assertEquals("MX-5", current.getModel());
+    }
+}
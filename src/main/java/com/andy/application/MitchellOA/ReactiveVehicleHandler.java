@@ -0,0 +1,153 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Set;
+
+// WebFlux handlers for the reactive profile, same behaviour as VehicleController
+@Component
+@Profile("reactive")
+public class ReactiveVehicleHandler {
+    private final ReactiveVehicleRepository vehicleRepository;
+    private final VehicleValidator vehicleValidator;
+    private final VehicleViolationLog violationLog;
+    private final int maxPageSize;
+    private final int maxResults;
+
+    public ReactiveVehicleHandler(ReactiveVehicleRepository vehicleRepository,
+                                  VehicleValidator vehicleValidator,
+                                  VehicleViolationLog violationLog,
+                                  @Value("${vehicles.search.max-page-size:1000}") int maxPageSize,
+                                  @Value("${vehicles.search.max-results:10000}") int maxResults) {
+        this.vehicleRepository = vehicleRepository;
+        this.vehicleValidator = vehicleValidator;
+        this.violationLog = violationLog;
+        this.maxPageSize = maxPageSize;
+        this.maxResults = maxResults;
+    }
+
+    /* GET /vehicles. Unpaged searches stream rows to the client with backpressure (capped at max-results),
+       paged searches read the page first so the next page can be sent in the Link header */
+    public Mono<ServerResponse> getVehicles(ServerRequest request) {
+        VehicleQuery query = VehicleQuery.of(intParam(request, "yearStart"), intParam(request, "yearEnd"),
+                request.queryParam("make").orElse(null), request.queryParam("model").orElse(null));
+        Integer limit = intParam(request, "limit");
+        String cursor = request.queryParam("cursor").orElse(null);
+
+        if (limit == null && cursor == null) {
+            Flux<Vehicle> vehicles = vehicleRepository.findPage(query, 0, maxResults);
+            return ServerResponse.status(HttpStatus.ACCEPTED).body(vehicles, Vehicle.class);
+        }
+
+        int pageSize = limit == null ? maxPageSize : Math.min(limit, maxPageSize);
+        if (pageSize <= 0) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid limit"));
+        }
+        return vehicleRepository.findPage(query, VehicleCursor.decode(cursor), pageSize + 1)
+                .collectList()
+                .flatMap(vehicles -> {
+                    ServerResponse.BodyBuilder response = ServerResponse.status(HttpStatus.ACCEPTED);
+                    if (vehicles.size() > pageSize) {
+                        vehicles = vehicles.subList(0, pageSize);
+                        String next = request.uriBuilder()
+                                .replaceQueryParam("cursor", VehicleCursor.encode(vehicles.get(pageSize - 1).getId()))
+                                .build().toString();
+                        response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+                    }
+                    return response.bodyValue(vehicles);
+                });
+    }
+
+    /* GET /vehicles/{id}. The ETag is the vehicle version, a matching If-None-Match gets 304 and no body */
+    public Mono<ServerResponse> getVehicleById(ServerRequest request) {
+        return vehicleRepository.findById(pathId(request))
+                .flatMap(vehicle -> {
+                    String eTag = VehicleController.eTag(vehicle);
+                    return request.checkNotModified(eTag).switchIfEmpty(Mono.defer(() ->
+                            ServerResponse.status(HttpStatus.ACCEPTED).eTag(eTag).bodyValue(vehicle)));
+                })
+                .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    /* POST /vehicles */
+    public Mono<ServerResponse> createVehicle(ServerRequest request) {
+        return request.bodyToMono(Vehicle.class).flatMap(vehicle -> {
+            // reset vehicle ID
+            vehicle.setId(0);
+
+            Set<VehicleViolation> violations = vehicleValidator.validate(vehicle);
+            if (!violations.isEmpty()) {
+                return rejected("create", violations);
+            }
+
+            return vehicleRepository.insert(vehicle)
+                    .flatMap(v -> ServerResponse.status(HttpStatus.ACCEPTED).bodyValue(v));
+        });
+    }
+
+    /* PUT /vehicles. Optimistic like VehicleController: If-Match with an older ETag gets 412, losing a race
+       against another write gets 409 */
+    public Mono<ServerResponse> updateVehicle(ServerRequest request) {
+        List<String> ifMatch = request.headers().header(HttpHeaders.IF_MATCH);
+        return request.bodyToMono(Vehicle.class).flatMap(vehicleSpecs -> {
+            // nothing is written unless every field is valid
+            Set<VehicleViolation> violations = vehicleValidator.validate(vehicleSpecs);
+            if (!violations.isEmpty()) {
+                return rejected("update", violations);
+            }
+
+            return vehicleRepository.findById(vehicleSpecs.getId())
+                    .flatMap(vehicle -> {
+                        VehicleController.checkIfMatch(ifMatch, vehicle);
+                        vehicle.setYear(vehicleSpecs.getYear());
+                        vehicle.setMake(vehicleSpecs.getMake());
+                        vehicle.setModel(vehicleSpecs.getModel());
+                        return vehicleRepository.update(vehicle)
+                                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.CONFLICT,
+                                        "Vehicle was changed by another request, retry")));
+                    })
+                    .flatMap(vehicle -> ServerResponse.status(HttpStatus.ACCEPTED)
+                            .eTag(VehicleController.eTag(vehicle)).bodyValue(vehicle))
+                    .switchIfEmpty(ServerResponse.notFound().build());
+        });
+    }
+
+    // 400 listing the broken rules, same body as VehicleExceptionHandler
+    private Mono<ServerResponse> rejected(String operation, Set<VehicleViolation> violations) {
+        violationLog.log(operation, violations);
+        return ServerResponse.badRequest().bodyValue(new VehicleValidationErrors(violations));
+    }
+
+    /* DELETE /vehicles/{id} */
+    public Mono<ServerResponse> deleteVehicle(ServerRequest request) {
+        return vehicleRepository.deleteById(pathId(request))
+                .flatMap(rows -> rows == 0 ? ServerResponse.notFound().build()
+                        : ServerResponse.status(HttpStatus.ACCEPTED).bodyValue("Vehicle Deleted"));
+    }
+
+    private static int pathId(ServerRequest request) {
+        try {
+            return Integer.parseInt(request.pathVariable("id"));
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid ID");
+        }
+    }
+
+    private static Integer intParam(ServerRequest request, String name) {
+        try {
+            return request.queryParam(name).map(Integer::valueOf).orElse(null);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid " + name);
+        }
+    }
+}
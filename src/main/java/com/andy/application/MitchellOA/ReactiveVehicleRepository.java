@@ -0,0 +1,131 @@
+package com.andy.application.MitchellOA;
+
+import io.r2dbc.spi.Row;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Non-blocking access to the vehicle table for the reactive profile. Same table, sequence
+// and search semantics as VehicleRepository, written as SQL over the R2DBC DatabaseClient
+@Repository
+@Profile("reactive")
+public class ReactiveVehicleRepository {
+    // must match INCREMENT BY of vehicle_seq, ids are handed out pooled-lo like Hibernate does
+    private static final int ALLOCATION_SIZE = 50;
+
+    private final DatabaseClient databaseClient;
+
+    private int nextId;
+    private int idLimit;
+
+    public ReactiveVehicleRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    public Mono<Vehicle> findById(int id) {
+        return databaseClient.execute("SELECT id, year, make, model, version FROM vehicle WHERE id = :id")
+                .bind("id", id)
+                .map(ReactiveVehicleRepository::toVehicle)
+                .one();
+    }
+
+    /* Vehicles matching the query with id > afterId, in id order, at most limit rows */
+    public Flux<Vehicle> findPage(VehicleQuery query, int afterId, int limit) {
+        List<String> where = new ArrayList<>();
+        where.add("id > :afterId");
+        if (query.hasYearRange()) {
+            where.add("year BETWEEN :yearStart AND :yearEnd");
+        }
+        if (query.getMakes() != null) {
+            where.add("make IN (:makes)");
+        }
+        if (query.getModels() != null) {
+            where.add("model IN (:models)");
+        }
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.execute("SELECT id, year, make, model, version FROM vehicle WHERE "
+                + String.join(" AND ", where) + " ORDER BY id LIMIT :limit")
+                .bind("afterId", afterId)
+                .bind("limit", limit);
+        if (query.hasYearRange()) {
+            spec = spec.bind("yearStart", query.getYearStart()).bind("yearEnd", query.getYearEnd());
+        }
+        if (query.getMakes() != null) {
+            spec = spec.bind("makes", query.getMakes());
+        }
+        if (query.getModels() != null) {
+            spec = spec.bind("models", query.getModels());
+        }
+        return spec.map(ReactiveVehicleRepository::toVehicle).all();
+    }
+
+    public Mono<Vehicle> insert(Vehicle vehicle) {
+        return nextId().flatMap(id -> databaseClient
+                .execute("INSERT INTO vehicle (id, year, make, model) VALUES (:id, :year, :make, :model)")
+                .bind("id", id)
+                .bind("year", vehicle.getYear())
+                .bind("make", vehicle.getMake())
+                .bind("model", vehicle.getModel())
+                .fetch().rowsUpdated()
+                .map(rows -> {
+                    vehicle.setId(id);
+                    return vehicle;
+                }));
+    }
+
+    /* Optimistic update, only matches the row at the vehicle's version. Empty when another write got there
+       first, otherwise the vehicle with its new version */
+    public Mono<Vehicle> update(Vehicle vehicle) {
+        return databaseClient.execute("UPDATE vehicle SET year = :year, make = :make, model = :model, "
+                + "version = version + 1 WHERE id = :id AND version = :expected")
+                .bind("id", vehicle.getId())
+                .bind("year", vehicle.getYear())
+                .bind("make", vehicle.getMake())
+                .bind("model", vehicle.getModel())
+                .bind("expected", vehicle.getVersion())
+                .fetch().rowsUpdated()
+                .filter(rows -> rows > 0)
+                .map(rows -> {
+                    vehicle.setVersion(vehicle.getVersion() + 1);
+                    return vehicle;
+                });
+    }
+
+    public Mono<Integer> deleteById(int id) {
+        return databaseClient.execute("DELETE FROM vehicle WHERE id = :id")
+                .bind("id", id)
+                .fetch().rowsUpdated();
+    }
+
+    // Next id from the current block, a new block costs one sequence call per ALLOCATION_SIZE ids
+    private Mono<Integer> nextId() {
+        synchronized (this) {
+            if (nextId < idLimit) {
+                return Mono.just(nextId++);
+            }
+        }
+        return databaseClient.execute("SELECT NEXT VALUE FOR vehicle_seq")
+                .map(row -> row.get(0, Long.class).intValue())
+                .one()
+                .map(low -> {
+                    synchronized (this) {
+                        nextId = low + 1;
+                        idLimit = low + ALLOCATION_SIZE;
+                    }
+                    return low;
+                });
+    }
+
+    private static Vehicle toVehicle(Row row) {
+        Vehicle vehicle = new Vehicle(row.get("year", Integer.class), row.get("make", String.class),
+                row.get("model", String.class));
+        vehicle.setId(row.get("id", Integer.class));
+        vehicle.setVersion(row.get("version", Long.class));
+        return vehicle;
+    }
+}
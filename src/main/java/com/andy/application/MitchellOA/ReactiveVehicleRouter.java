@@ -0,0 +1,32 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.*;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+// Routes of the reactive profile
+@Configuration
+@Profile("reactive")
+public class ReactiveVehicleRouter {
+
+    @Bean
+    public RouterFunction<ServerResponse> vehicleRoutes(ReactiveVehicleHandler handler) {
+        return route(GET("/vehicles"), handler::getVehicles)
+                .andRoute(GET("/vehicles/{id}"), handler::getVehicleById)
+                .andRoute(POST("/vehicles"), handler::createVehicle)
+                .andRoute(PUT("/vehicles"), handler::updateVehicle)
+                .andRoute(DELETE("/vehicles/{id}"), handler::deleteVehicle);
+    }
+
+    /* Tomcat is on the classpath for the servlet stack, serve the reactive stack from Netty's event loop */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
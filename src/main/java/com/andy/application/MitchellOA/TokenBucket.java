@@ -0,0 +1,28 @@
+package com.andy.application.MitchellOA;
+
+// Token bucket for one client: holds at most capacity tokens and gains refillPerSecond tokens a second.
+// Refilled lazily on every call from the time since the last one, so idle buckets cost nothing
+final class TokenBucket {
+    private final double capacity;
+    private final double refillPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(long capacity, double refillPerSecond, long now) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1e9;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    /* Take cost tokens. Returns 0 when they were taken, otherwise the nanoseconds until there will be enough */
+    synchronized long tryConsume(long cost, long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+        if (tokens >= cost) {
+            tokens -= cost;
+            return 0;
+        }
+        return (long) Math.ceil((cost - tokens) / refillPerNano);
+    }
+}
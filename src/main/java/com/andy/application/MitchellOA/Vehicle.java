@@ -1,21 +1,46 @@
 package com.andy.application.MitchellOA;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.Id;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Index;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Version;
 
 @Entity
+// second-level cache, the "vehicle" region in application.conf. read-write keeps it consistent with
+// concurrent updates through Hibernate, bulk updates (PATCH) drop the whole region
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "vehicle")
+@EntityListeners(VehicleEntityListener.class)
+// same indexes as db/migration, they back the GET /vehicles filters
+@Table(indexes = {
+        @Index(name = "idx_vehicle_make_model_year", columnList = "make, model, year"),
+        @Index(name = "idx_vehicle_model_year", columnList = "model, year"),
+        @Index(name = "idx_vehicle_year", columnList = "year")
+})
 @Data
 // POJO (Plan Old Java Object)
 public class Vehicle {
     @Id
-    @GeneratedValue
+    // ids are handed out 50 at a time so inserts can be batched
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "vehicle_seq")
+    @SequenceGenerator(name = "vehicle_seq", sequenceName = "vehicle_seq", allocationSize = 50)
     private int id;
     private int year;
     private String make;
     private String model;
+    // bumped on every update, clients see it as the ETag of /vehicles/{id} instead of in the body
+    @Version
+    @JsonIgnore
+    private long version;
 
     public Vehicle() {
     }
@@ -58,4 +83,12 @@ public class Vehicle {
     public void setModel(String model) {
         this.model = model;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,43 @@
+package com.andy.application.MitchellOA;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Outcome of one item of a POST/PUT /vehicles/batch request
+public class VehicleBatchResult {
+    public enum Status { CREATED, UPDATED, REJECTED, NOT_FOUND }
+
+    private int index;
+    private int id;
+    private Status status;
+    private List<String> errors;
+
+    public VehicleBatchResult() {
+    }
+
+    public VehicleBatchResult(int index, int id, Status status, Iterable<VehicleViolation> violations) {
+        this.index = index;
+        this.id = id;
+        this.status = status;
+        this.errors = new ArrayList<>();
+        for (VehicleViolation violation : violations) {
+            this.errors.add(violation.getMessage());
+        }
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
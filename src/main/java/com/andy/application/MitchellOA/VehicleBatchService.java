@@ -0,0 +1,99 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Bulk writes for /vehicles/batch, validated here and saved through the store in chunks.
+// With the JPA store every chunk is sent as JDBC batches, with the log store as one group commit
+@Service
+@Profile("!reactive")
+public class VehicleBatchService {
+    private final VehicleStore vehicleStore;
+    private final VehicleValidator vehicleValidator;
+    private final int batchSize;
+
+    public VehicleBatchService(VehicleStore vehicleStore,
+                               VehicleValidator vehicleValidator,
+                               @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
+        this.vehicleStore = vehicleStore;
+        this.vehicleValidator = vehicleValidator;
+        this.batchSize = batchSize;
+    }
+
+    /* Insert every valid vehicle, invalid ones are reported and skipped */
+    public List<VehicleBatchResult> create(List<Vehicle> vehicles) {
+        List<Set<VehicleViolation>> violations = new ArrayList<>(vehicles.size());
+        List<Vehicle> valid = new ArrayList<>(vehicles.size());
+        for (Vehicle vehicle : vehicles) {
+            vehicle.setId(0);
+            violations.add(vehicleValidator.validate(vehicle));
+            if (violations.get(violations.size() - 1).isEmpty()) {
+                valid.add(vehicle);
+            }
+        }
+
+        // ids are assigned by the store
+        vehicleStore.insertAll(valid);
+
+        List<VehicleBatchResult> results = new ArrayList<>(vehicles.size());
+        for (int i = 0; i < vehicles.size(); i++) {
+            results.add(violations.get(i).isEmpty()
+                    ? new VehicleBatchResult(i, vehicles.get(i).getId(), VehicleBatchResult.Status.CREATED,
+                    violations.get(i))
+                    : new VehicleBatchResult(i, 0, VehicleBatchResult.Status.REJECTED, violations.get(i)));
+        }
+        return results;
+    }
+
+    /* Update existing vehicles, one that breaks a rule is rejected and left unchanged like PUT /vehicles.
+       One transaction for all chunks, so with JPA the vehicles read stay managed until they are flushed */
+    @Transactional
+    public List<VehicleBatchResult> update(List<Vehicle> vehicles) {
+        List<VehicleBatchResult> results = new ArrayList<>(vehicles.size());
+
+        for (int from = 0; from < vehicles.size(); from += batchSize) {
+            List<Vehicle> chunk = vehicles.subList(from, Math.min(from + batchSize, vehicles.size()));
+
+            // one IN query per chunk instead of one findById per item
+            Map<Integer, Vehicle> existing = vehicleStore
+                    .findAllById(chunk.stream().map(Vehicle::getId).collect(Collectors.toList()))
+                    .stream()
+                    .collect(Collectors.toMap(Vehicle::getId, Function.identity()));
+            List<Vehicle> updated = new ArrayList<>(chunk.size());
+
+            for (int i = 0; i < chunk.size(); i++) {
+                Vehicle specs = chunk.get(i);
+                Vehicle vehicle = existing.get(specs.getId());
+                if (vehicle == null) {
+                    results.add(new VehicleBatchResult(from + i, specs.getId(),
+                            VehicleBatchResult.Status.NOT_FOUND, Collections.emptySet()));
+                    continue;
+                }
+
+                Set<VehicleViolation> violations = vehicleValidator.validate(specs);
+                if (!violations.isEmpty()) {
+                    results.add(new VehicleBatchResult(from + i, vehicle.getId(),
+                            VehicleBatchResult.Status.REJECTED, violations));
+                    continue;
+                }
+
+                vehicle.setYear(specs.getYear());
+                vehicle.setMake(specs.getMake());
+                vehicle.setModel(specs.getModel());
+                updated.add(vehicle);
+                results.add(new VehicleBatchResult(from + i, vehicle.getId(),
+                        VehicleBatchResult.Status.UPDATED, violations));
+            }
+
+            vehicleStore.updateAll(updated);
+        }
+
+        return results;
+    }
+}
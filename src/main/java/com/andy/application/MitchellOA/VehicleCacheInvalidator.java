@@ -0,0 +1,22 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+// Drops a vehicle from the by-ID cache once the transaction that changed it is over, which also covers
+// rollbacks of an entity that was modified in place. A reader that loaded the old row before the commit does
+// not cache it after this evict, see DetachedVehicleCache
+@Component
+public class VehicleCacheInvalidator {
+    private final DetachedVehicleCache vehicles;
+
+    public VehicleCacheInvalidator(DetachedVehicleCache vehicles) {
+        this.vehicles = vehicles;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION, fallbackExecution = true)
+    public void onVehicleChanged(VehicleChangedEvent event) {
+        vehicles.evict(event.getId());
+    }
+}
@@ -0,0 +1,62 @@
+package com.andy.application.MitchellOA;
+
+import java.time.Instant;
+
+// One row of the vehicle_change outbox, as returned by GET /vehicles/changes.
+// A PATCHED change only has the patched fields, like its VehicleChangedEvent
+public class VehicleChange {
+    private final long seq;
+    private final VehicleChangedEvent.Type type;
+    private final int id;
+    private final Integer year;
+    private final String make;
+    private final String model;
+    private final long version;
+    private final Instant time;
+
+    VehicleChange(long seq, VehicleChangedEvent.Type type, int id, Integer year, String make, String model,
+                  long version, Instant time) {
+        this.seq = seq;
+        this.type = type;
+        this.id = id;
+        this.year = year;
+        this.make = make;
+        this.model = model;
+        this.version = version;
+        this.time = time;
+    }
+
+    /* Position in the feed, pass the last one seen as since= to continue after it */
+    public long getSeq() {
+        return seq;
+    }
+
+    public VehicleChangedEvent.Type getType() {
+        return type;
+    }
+
+    /* ID of the vehicle that changed */
+    public int getId() {
+        return id;
+    }
+
+    public Integer getYear() {
+        return year;
+    }
+
+    public String getMake() {
+        return make;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getTime() {
+        return time;
+    }
+}
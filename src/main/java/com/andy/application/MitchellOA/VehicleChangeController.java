@@ -0,0 +1,277 @@
+package com.andy.application.MitchellOA;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Incremental sync for copies of the vehicle table, enabled with vehicles.changes.enabled=true.
+// GET /vehicles/changes?since=seq is a long poll: the changes after seq as JSON, waiting up to wait seconds
+// for the first one. The same URL with Accept: text/event-stream is a Server-Sent Events stream, every event
+// id is its seq so a reconnecting EventSource resumes from Last-Event-ID.
+// Responses carry the horizon (see VehicleChangeOutbox.horizon) in X-Change-Seq, so does GET /vehicles: a client
+// that got 410 reloads GET /vehicles and continues from that header.
+// Waiting requests hold no thread, one dispatcher thread answers them after each commit. Streams are written
+// on their own threads, so a client that reads slowly only holds up its own stream
+@RestController
+@Profile("!reactive")
+@ConditionalOnProperty(name = "vehicles.changes.enabled", havingValue = "true")
+public class VehicleChangeController implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(VehicleChangeController.class);
+    // highest seq the response reflects
+    public static final String SEQ_HEADER = "X-Change-Seq";
+
+    private final VehicleChangeOutbox outbox;
+    private final ObjectMapper objectMapper;
+    private final int maxPageSize;
+    private final Duration maxWait;
+    private final Duration streamTimeout;
+
+    private final Queue<Poll> polls = new ConcurrentLinkedQueue<>();
+    private final Queue<Subscriber> subscribers = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService dispatcher;
+    // writes to streams, a thread per stream that is being written to, none for idle ones
+    private final ExecutorService senders;
+    // set while a dispatch is queued, commits in the meantime are covered by it
+    private final AtomicBoolean dispatchQueued = new AtomicBoolean();
+
+    public VehicleChangeController(VehicleChangeOutbox outbox,
+                                   ObjectMapper objectMapper,
+                                   @Value("${vehicles.changes.max-page-size:1000}") int maxPageSize,
+                                   @Value("${vehicles.changes.max-wait:30s}") Duration maxWait,
+                                   @Value("${vehicles.changes.stream-timeout:30m}") Duration streamTimeout,
+                                   @Value("${vehicles.changes.heartbeat:15s}") Duration heartbeat) {
+        this.outbox = outbox;
+        this.objectMapper = objectMapper;
+        this.maxPageSize = maxPageSize;
+        this.maxWait = maxWait;
+        this.streamTimeout = streamTimeout;
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vehicle-changes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.senders = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "vehicle-changes-send");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // proxies drop idle connections, a comment line keeps streams open and finds clients that are gone
+        dispatcher.scheduleWithFixedDelay(this::sendHeartbeats, heartbeat.toMillis(), heartbeat.toMillis(),
+                TimeUnit.MILLISECONDS);
+        outbox.addListener(this::dispatch);
+    }
+
+    /* Changes after since, oldest first, at most limit (default and cap vehicles.changes.max-page-size).
+       Waits up to wait seconds when there are none yet, then returns an empty list.
+       410 when since is older than the retained changes or newer than any (the server restarted): reload
+       GET /vehicles and continue from its X-Change-Seq (also the seq field of the 410 body) */
+    @GetMapping(value = "/vehicles/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Timed(value = VehicleController.REQUEST_TIMER, extraTags = {"operation", "changes"}, histogram = true)
+    public DeferredResult<ResponseEntity<List<VehicleChange>>> getChanges(
+            @RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "wait", defaultValue = "0") int wait) {
+        checkRetained(since);
+        if (limit != null && limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+        }
+        if (wait < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "wait must not be negative");
+        }
+        int pageSize = limit == null ? maxPageSize : Math.min(limit, maxPageSize);
+        long timeout = Math.min(TimeUnit.SECONDS.toMillis(wait), maxWait.toMillis());
+
+        DeferredResult<ResponseEntity<List<VehicleChange>>> result = new DeferredResult<>(timeout);
+        result.onTimeout(() -> result.setResult(accepted(outbox.horizon(), List.of())));
+        long horizon = outbox.horizon();
+        List<VehicleChange> changes = outbox.read(since, pageSize);
+        if (!changes.isEmpty() || timeout == 0) {
+            result.setResult(accepted(horizon, changes));
+            return result;
+        }
+
+        Poll poll = new Poll(since, pageSize, result);
+        polls.add(poll);
+        result.onCompletion(() -> polls.remove(poll));
+        // a commit between the read and polls.add did not see this poll
+        dispatch();
+        return result;
+    }
+
+    /* Server-Sent Events: every change after since (or Last-Event-ID), then new ones as they commit.
+       The event name is the change type, the data the change as JSON */
+    @GetMapping(value = "/vehicles/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamChanges(
+            @RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        long cursor = lastEventId != null ? lastEventId : since;
+        checkRetained(cursor);
+
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        Subscriber subscriber = new Subscriber(cursor, emitter);
+        subscribers.add(subscriber);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(subscriber));
+        // the backlog goes out like everything else
+        dispatch();
+        return ResponseEntity.ok().header(SEQ_HEADER, Long.toString(outbox.horizon())).body(emitter);
+    }
+
+    /* 410 with the seq to continue from after reloading */
+    @ExceptionHandler(VehicleChangesGoneException.class)
+    public ResponseEntity<VehicleChangesGone> handleGone(VehicleChangesGoneException e) {
+        return ResponseEntity.status(HttpStatus.GONE)
+                .header(SEQ_HEADER, Long.toString(e.getSeq()))
+                .body(new VehicleChangesGone(e.getMessage(), e.getSeq()));
+    }
+
+    @Override
+    public void destroy() {
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    // A since past the horizon was handed out before a restart, the seqs have started over since
+    private void checkRetained(long since) {
+        long prunedThrough = outbox.getPrunedThrough();
+        long horizon = outbox.horizon();
+        if (since < prunedThrough) {
+            throw new VehicleChangesGoneException("Changes up to " + prunedThrough + " are no longer kept", horizon);
+        }
+        if (since > horizon) {
+            throw new VehicleChangesGoneException("Change " + since + " is from before a restart", horizon);
+        }
+    }
+
+    private void dispatch() {
+        if (dispatchQueued.compareAndSet(false, true)) {
+            dispatcher.execute(this::deliver);
+        }
+    }
+
+    private void deliver() {
+        dispatchQueued.set(false);
+        try {
+            long horizon = outbox.horizon();
+            for (Poll poll : polls) {
+                List<VehicleChange> changes = outbox.read(poll.since, poll.limit);
+                if (!changes.isEmpty()) {
+                    poll.result.setResult(accepted(horizon, changes));
+                }
+            }
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.queued.compareAndSet(false, true)) {
+                    senders.execute(() -> send(subscriber));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not deliver vehicle changes", e);
+        }
+    }
+
+    private static ResponseEntity<List<VehicleChange>> accepted(long horizon, List<VehicleChange> changes) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).header(SEQ_HEADER, Long.toString(horizon)).body(changes);
+    }
+
+    // Everything the subscriber has not seen yet, a page at a time. A commit while this runs queues the next
+    // send, which waits for this one
+    private void send(Subscriber subscriber) {
+        subscriber.queued.set(false);
+        subscriber.lock.lock();
+        try {
+            List<VehicleChange> changes;
+            do {
+                changes = outbox.read(subscriber.cursor, maxPageSize);
+                for (VehicleChange change : changes) {
+                    // written as a string, the JSON converter would close the response after the first event
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(Long.toString(change.getSeq()))
+                            .name(change.getType().name())
+                            .data(objectMapper.writeValueAsString(change)));
+                    subscriber.cursor = change.getSeq();
+                }
+            } while (changes.size() == maxPageSize);
+        } catch (IOException | IllegalStateException e) {
+            // the client went away or the emitter already completed
+            subscribers.remove(subscriber);
+        } catch (RuntimeException e) {
+            log.error("Could not send vehicle changes", e);
+        } finally {
+            subscriber.lock.unlock();
+        }
+    }
+
+    private void sendHeartbeats() {
+        for (Subscriber subscriber : subscribers) {
+            senders.execute(() -> sendHeartbeat(subscriber));
+        }
+    }
+
+    // A stream that is being written to is not idle, and one stuck in a write does not get more threads stuck
+    private void sendHeartbeat(Subscriber subscriber) {
+        if (!subscriber.lock.tryLock()) {
+            return;
+        }
+        try {
+            subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+        } catch (IOException | IllegalStateException e) {
+            subscribers.remove(subscriber);
+        } finally {
+            subscriber.lock.unlock();
+        }
+    }
+
+    private static final class Poll {
+        private final long since;
+        private final int limit;
+        private final DeferredResult<ResponseEntity<List<VehicleChange>>> result;
+
+        Poll(long since, int limit, DeferredResult<ResponseEntity<List<VehicleChange>>> result) {
+            this.since = since;
+            this.limit = limit;
+            this.result = result;
+        }
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        // one write at a time, and a send waiting to run
+        private final ReentrantLock lock = new ReentrantLock();
+        private final AtomicBoolean queued = new AtomicBoolean();
+        // seq of the last change sent, guarded by lock
+        private long cursor;
+
+        Subscriber(long cursor, SseEmitter emitter) {
+            this.cursor = cursor;
+            this.emitter = emitter;
+        }
+    }
+}
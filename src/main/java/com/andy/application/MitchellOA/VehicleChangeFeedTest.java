@@ -0,0 +1,191 @@
+package com.andy.application.MitchellOA;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "vehicles.changes.enabled=true")
+public class VehicleChangeFeedTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private VehicleChangeOutbox outbox;
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private JsonNode changesSince(long since) {
+        ResponseEntity<JsonNode> response = restTemplate.getForEntity("/vehicles/changes?since=" + since,
+                JsonNode.class);
+        Assert.assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        return response.getBody();
+    }
+
+    private int create(String make) {
+        return restTemplate.postForEntity("/vehicles", new Vehicle(2015, make, "FeedModel"), Vehicle.class)
+                .getBody().getId();
+    }
+
+    @Test
+    public void testWritesAreRecordedInOrder() {
+        long head = outbox.horizon();
+        int id = create("FeedMake");
+        Vehicle vehicle = restTemplate.getForObject("/vehicles/" + id, Vehicle.class);
+        vehicle.setModel("FeedModel2");
+        restTemplate.put("/vehicles", vehicle);
+        restTemplate.delete("/vehicles/" + id);
+
+        JsonNode changes = changesSince(head);
+        Assert.assertEquals(3, changes.size());
+        Assert.assertEquals("CREATED", changes.get(0).get("type").asText());
+        Assert.assertEquals("UPDATED", changes.get(1).get("type").asText());
+        Assert.assertEquals("FeedModel2", changes.get(1).get("model").asText());
+        Assert.assertEquals(1, changes.get(1).get("version").asLong());
+        Assert.assertEquals("DELETED", changes.get(2).get("type").asText());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(id, changes.get(i).get("id").asInt());
+            long previous = i == 0 ? head : changes.get(i - 1).get("seq").asLong();
+            Assert.assertTrue(changes.get(i).get("seq").asLong() > previous);
+        }
+
+        // the cursor moves on
+        Assert.assertEquals(0, changesSince(changes.get(2).get("seq").asLong()).size());
+    }
+
+    @Test
+    public void testOnlyCommittedWritesAreRecorded() {
+        long head = outbox.horizon();
+
+        // a repository write, as Spring Data REST makes it, that rolls back
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            vehicleRepository.saveAndFlush(new Vehicle(2015, "RolledBack", "FeedModel"));
+            status.setRollbackOnly();
+        });
+        Assert.assertEquals(0, changesSince(head).size());
+
+        Vehicle saved = vehicleRepository.save(new Vehicle(2015, "Committed", "FeedModel"));
+        JsonNode changes = changesSince(head);
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(saved.getId(), changes.get(0).get("id").asInt());
+    }
+
+    @Test
+    public void testTransactionChangesAreWrittenTogether() {
+        long head = outbox.horizon();
+
+        // the update is only flushed when the transaction commits, its change still goes in the same batch
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int id = transaction.execute(status -> {
+            Vehicle first = vehicleRepository.save(new Vehicle(2015, "BatchMake", "FeedModel"));
+            vehicleRepository.save(new Vehicle(2016, "BatchMake", "FeedModel"));
+            first.setModel("FeedModel2");
+            return first.getId();
+        });
+
+        JsonNode changes = changesSince(head);
+        Assert.assertEquals(3, changes.size());
+        Assert.assertEquals("UPDATED", changes.get(2).get("type").asText());
+        Assert.assertEquals(id, changes.get(2).get("id").asInt());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(head + i + 1, changes.get(i).get("seq").asLong());
+        }
+    }
+
+    @Test
+    public void testLongPollWaitsForTheNextChange() throws Exception {
+        long head = outbox.horizon();
+        CompletableFuture<JsonNode> poll = CompletableFuture.supplyAsync(() -> restTemplate.getForObject(
+                "/vehicles/changes?since=" + head + "&wait=10", JsonNode.class));
+        Thread.sleep(300);
+        Assert.assertFalse(poll.isDone());
+
+        int id = create("PollMake");
+        JsonNode changes = poll.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(id, changes.get(0).get("id").asInt());
+    }
+
+    @Test
+    public void testStreamSendsBacklogThenNewChanges() {
+        long head = outbox.horizon();
+        int first = create("StreamMake");
+
+        Flux<ServerSentEvent<JsonNode>> events = webTestClient.get().uri("/vehicles/changes?since=" + head)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<JsonNode>>() {
+                })
+                .getResponseBody();
+
+        CompletableFuture<Integer> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return create("StreamMake");
+        });
+        List<ServerSentEvent<JsonNode>> received = events.filter(event -> event.data() != null)
+                .take(2).collectList().block(Duration.ofSeconds(10));
+
+        Assert.assertEquals("CREATED", received.get(0).event());
+        Assert.assertEquals(first, received.get(0).data().get("id").asInt());
+        Assert.assertEquals((int) second.join(), received.get(1).data().get("id").asInt());
+        Assert.assertEquals(received.get(1).data().get("seq").asText(), received.get(1).id());
+    }
+
+    @Test
+    public void testPrunedChangesAreGone() {
+        create("PrunedMake");
+        Assert.assertTrue(outbox.prune(Instant.now().plusSeconds(1)) > 0);
+
+        Assert.assertEquals(HttpStatus.GONE,
+                restTemplate.getForEntity("/vehicles/changes?since=0", String.class).getStatusCode());
+        Assert.assertEquals(0, changesSince(outbox.getPrunedThrough()).size());
+    }
+
+    @Test
+    public void testSeqFromBeforeARestartIsGone() {
+        create("RestartMake");
+        long horizon = outbox.horizon();
+
+        // a consumer that read further before the seqs started over
+        ResponseEntity<String> response = restTemplate.getForEntity("/vehicles/changes?since=" + (horizon + 100),
+                String.class);
+        Assert.assertEquals(HttpStatus.GONE, response.getStatusCode());
+        Assert.assertEquals(Long.toString(horizon), response.getHeaders().getFirst(VehicleChangeController.SEQ_HEADER));
+        Assert.assertEquals(0, changesSince(horizon).size());
+    }
+}
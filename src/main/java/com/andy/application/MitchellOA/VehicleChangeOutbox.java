@@ -0,0 +1,280 @@
+package com.andy.application.MitchellOA;
+
+import org.hibernate.engine.spi.SessionImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Change data capture outbox (vehicles.changes.enabled, off by default). Every VehicleChangedEvent becomes a
+// vehicle_change row. A transaction's changes are collected while it runs and written with one JDBC batch just
+// before it commits, on its connection, so they commit or roll back together with the write. JPA writes only
+// publish their events in Hibernate's flush inside the commit, after Spring's beforeCommit, so those are
+// written from Hibernate's own before-completion hook, which runs after that flush. Writes outside a
+// transaction (the log store) are written on their own right after the vehicle is saved, the store publishes
+// them in log order.
+// seqs are handed out here, a block per batch, but batches commit in any order. Readers only see up to the
+// horizon, just below the oldest block whose transaction is still open, so a consumer that read up to a seq
+// never misses a lower one that commits later. This only holds for writes in this process. The outbox lives in
+// the database, with the in-memory one seqs start over after a restart even when the log store kept the vehicles
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "vehicles.changes.enabled", havingValue = "true")
+public class VehicleChangeOutbox implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(VehicleChangeOutbox.class);
+    private static final String INSERT = "INSERT INTO vehicle_change "
+            + "(seq, type, vehicle_id, year, make, model, version, changed_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT = "SELECT seq, type, vehicle_id, year, make, model, version, changed_at "
+            + "FROM vehicle_change WHERE seq > ? AND seq <= ? ORDER BY seq LIMIT ?";
+
+    private static final RowMapper<VehicleChange> ROW_MAPPER = (rs, rowNum) -> new VehicleChange(
+            rs.getLong("seq"),
+            VehicleChangedEvent.Type.valueOf(rs.getString("type")),
+            rs.getInt("vehicle_id"),
+            rs.getObject("year", Integer.class),
+            rs.getString("make"),
+            rs.getString("model"),
+            rs.getLong("version"),
+            rs.getTimestamp("changed_at").toInstant());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration retention;
+
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    // first seq of every block whose transaction has not completed yet and the highest seq handed out,
+    // guarded by this. Only held to hand out a block, never while talking to the database
+    private final TreeSet<Long> uncommitted = new TreeSet<>();
+    private long lastSeq;
+    // changes up to here were pruned, a consumer that is further behind has to start over
+    private volatile long prunedThrough;
+
+    // told after every commit that added changes
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService pruner;
+
+    public VehicleChangeOutbox(JdbcTemplate jdbcTemplate,
+                               @Value("${vehicles.changes.retention:7d}") Duration retention,
+                               @Value("${vehicles.changes.prune-interval:10m}") Duration pruneInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.retention = retention;
+        this.lastSeq = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(seq), 0) FROM vehicle_change", Long.class);
+        this.prunedThrough = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MIN(seq) - 1, 0) FROM vehicle_change", Long.class);
+
+        this.pruner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vehicle-change-pruning");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pruner.scheduleWithFixedDelay(this::pruneExpired, pruneInterval.toMillis(), pruneInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Synchronous on purpose: the change has to join the vehicle's transaction before it commits
+    @EventListener
+    public void onVehicleChanged(VehicleChangedEvent event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pending().add(event);
+            return;
+        }
+        long first = reserve(1);
+        try {
+            insert(first, List.of(event));
+        } finally {
+            release(first);
+        }
+        notifyListeners();
+    }
+
+    /* Committed changes after since, in seq order, at most limit */
+    public List<VehicleChange> read(long since, int limit) {
+        long horizon = horizon();
+        if (horizon <= since) {
+            return new ArrayList<>();
+        }
+        return jdbcTemplate.query(SELECT, ROW_MAPPER, since, horizon, limit);
+    }
+
+    /* Highest seq a reader may see: everything up to it is committed or rolled back */
+    public synchronized long horizon() {
+        return uncommitted.isEmpty() ? lastSeq : uncommitted.first() - 1;
+    }
+
+    /* Changes up to this seq may have been deleted */
+    public long getPrunedThrough() {
+        return prunedThrough;
+    }
+
+    /* Run listener on the committing thread after each commit with changes, it should only hand off work */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /* Delete the changes made before the given time, returns how many were deleted */
+    int prune(Instant before) {
+        Long through = jdbcTemplate.queryForObject("SELECT MAX(seq) FROM vehicle_change WHERE changed_at < ?",
+                Long.class, Timestamp.from(before));
+        if (through == null) {
+            return 0;
+        }
+        // never past an open transaction, its row may still commit below through
+        through = Math.min(through, horizon());
+        int deleted = jdbcTemplate.update("DELETE FROM vehicle_change WHERE seq <= ?", through);
+        prunedThrough = Math.max(prunedThrough, through);
+        return deleted;
+    }
+
+    private void pruneExpired() {
+        try {
+            prune(Instant.now().minus(retention));
+        } catch (RuntimeException e) {
+            log.error("Could not prune vehicle changes", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pruner.shutdownNow();
+    }
+
+    // The next count seqs, which stay below the horizon until released
+    private synchronized long reserve(int count) {
+        long first = lastSeq + 1;
+        lastSeq += count;
+        uncommitted.add(first);
+        return first;
+    }
+
+    private synchronized void release(long first) {
+        uncommitted.remove(first);
+    }
+
+    private void insert(long first, List<VehicleChangedEvent> events) {
+        Timestamp changedAt = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(INSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                VehicleChangedEvent event = events.get(i);
+                statement.setLong(1, first + i);
+                statement.setString(2, event.getType().name());
+                statement.setInt(3, event.getId());
+                statement.setObject(4, event.getYear(), Types.INTEGER);
+                statement.setString(5, event.getMake());
+                statement.setString(6, event.getModel());
+                statement.setLong(7, event.getVersion());
+                statement.setTimestamp(8, changedAt);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return events.size();
+            }
+        });
+    }
+
+    // The changes of the current transaction, written when it is about to commit
+    private Pending pending() {
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new Pending();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+            // the transaction's own session, not isJoinedToTransaction: that is false while the commit flushes
+            EntityManagerHolder holder = (EntityManagerHolder) TransactionSynchronizationManager
+                    .getResource(entityManagerFactory);
+            if (holder != null && holder.isSynchronizedWithTransaction()) {
+                pending.hibernate = true;
+                Pending registered = pending;
+                holder.getEntityManager().unwrap(SessionImplementor.class).getActionQueue()
+                        .registerProcess(session -> registered.afterFlush());
+            }
+        }
+        return pending;
+    }
+
+    private void notifyListeners() {
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    private final class Pending implements TransactionSynchronization {
+        private final List<VehicleChangedEvent> events = new ArrayList<>();
+        // first seq of each block written for this transaction
+        private final List<Long> blocks = new ArrayList<>();
+        // a Hibernate session takes part, its commit flush publishes more changes after beforeCommit
+        private boolean hibernate;
+        // the last hook ran, anything later goes out on its own
+        private boolean written;
+
+        void add(VehicleChangedEvent event) {
+            events.add(event);
+            if (written) {
+                write();
+            }
+        }
+
+        // Only called when this was registered before the commit started, e.g. by an event published from a
+        // write method rather than from a flush
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            write();
+            written = !hibernate;
+        }
+
+        // Hibernate's before-completion process: the commit flush is done, the transaction is not committed yet
+        void afterFlush() {
+            write();
+            written = true;
+        }
+
+        private void write() {
+            if (events.isEmpty()) {
+                return;
+            }
+            long first = reserve(events.size());
+            blocks.add(first);
+            insert(first, events);
+            events.clear();
+        }
+
+        // Not ordered, so this runs after the transactional event listeners (order 0): the search index and
+        // cache already reflect the changes when the horizon moves past them
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(VehicleChangeOutbox.this);
+            synchronized (VehicleChangeOutbox.this) {
+                uncommitted.removeAll(blocks);
+            }
+            if (status == STATUS_COMMITTED && !blocks.isEmpty()) {
+                notifyListeners();
+            }
+        }
+    }
+}
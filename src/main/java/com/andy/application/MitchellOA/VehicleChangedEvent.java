@@ -0,0 +1,64 @@
+package com.andy.application.MitchellOA;
+
+// Published whenever a vehicle row is inserted, updated or deleted.
+// PATCHED comes from a single UPDATE statement: only the patched fields are known, the others are null,
+// the version is the one the patch wrote.
+// Writes of one vehicle that commit on different threads can reach after-commit listeners in either order.
+// An event with a lower version than the one already applied is stale, and so is any event after DELETED,
+// because ids are never handed out again
+public class VehicleChangedEvent {
+    public enum Type { CREATED, UPDATED, PATCHED, DELETED }
+
+    private final Type type;
+    private final int id;
+    private final Integer year;
+    private final String make;
+    private final String model;
+    private final long version;
+
+    public VehicleChangedEvent(Type type, Vehicle vehicle) {
+        this.type = type;
+        this.id = vehicle.getId();
+        this.year = vehicle.getYear();
+        this.make = vehicle.getMake();
+        this.model = vehicle.getModel();
+        this.version = vehicle.getVersion();
+    }
+
+    private VehicleChangedEvent(int id, Integer year, String make, String model, long version) {
+        this.type = Type.PATCHED;
+        this.id = id;
+        this.year = year;
+        this.make = make;
+        this.model = model;
+        this.version = version;
+    }
+
+    public static VehicleChangedEvent patched(int id, Integer year, String make, String model, long version) {
+        return new VehicleChangedEvent(id, year, make, model, version);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Integer getYear() {
+        return year;
+    }
+
+    public String getMake() {
+        return make;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,34 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.http.HttpStatus;
+
+// 410 body of GET /vehicles/changes for a since that was pruned or is past the horizon (the seqs started over).
+// The consumer reloads GET /vehicles and continues from seq, or from the X-Change-Seq header of that reload
+public class VehicleChangesGone {
+    private final int status = HttpStatus.GONE.value();
+    private final String error = HttpStatus.GONE.getReasonPhrase();
+    private final String message;
+    private final long seq;
+
+    public VehicleChangesGone(String message, long seq) {
+        this.message = message;
+        this.seq = seq;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /* Highest committed seq when the request was refused */
+    public long getSeq() {
+        return seq;
+    }
+}
@@ -0,0 +1,18 @@
+package com.andy.application.MitchellOA;
+
+// The changes a consumer asked for were pruned or are from before a restart, answered with 410 and
+// VehicleChangesGone
+public class VehicleChangesGoneException extends RuntimeException {
+    private final long seq;
+
+    public VehicleChangesGoneException(String message, long seq) {
+        // no stack trace, this is an answer to the client and not a bug
+        super(message, null, false, false);
+        this.seq = seq;
+    }
+
+    /* The horizon when the request was refused */
+    public long getSeq() {
+        return seq;
+    }
+}
@@ -0,0 +1,252 @@
+package com.andy.application.MitchellOA;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Column-oriented copy of the vehicle table for wide scans (vehicles.search.engine=columnar).
+// Rows are kept in id order as parallel primitive arrays: id, year, version and dictionary codes for
+// make and model, about 24 bytes a row instead of a Vehicle with two Strings. A search is one pass
+// over the arrays comparing ints, Vehicle objects are only built for the rows it returns.
+// Loaded from the store at startup and kept current from VehicleChangedEvent, like VehicleSearchIndex
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "vehicles.search.engine", havingValue = "columnar")
+public class VehicleColumnSnapshot implements VehicleSearchEngine, SmartInitializingSingleton {
+    // make code of a deleted row, the row is dropped from the arrays at the next compaction
+    private static final int DELETED = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final VehicleStore vehicleStore;
+
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] years = new int[INITIAL_CAPACITY];
+    private long[] versions = new long[INITIAL_CAPACITY];
+    private int[] makes = new int[INITIAL_CAPACITY];
+    private int[] models = new int[INITIAL_CAPACITY];
+    private int size;
+    private int deleted;
+    // IDs of deleted vehicles, kept after compaction drops their rows
+    private final RoaringBitmap tombstones = new RoaringBitmap();
+
+    // codes are never reused, a make without rows keeps its code
+    private final Map<String, Integer> makeCodes = new HashMap<>();
+    private final Map<String, Integer> modelCodes = new HashMap<>();
+    private final List<String> makeValues = new ArrayList<>();
+    private final List<String> modelValues = new ArrayList<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public VehicleColumnSnapshot(VehicleStore vehicleStore) {
+        this.vehicleStore = vehicleStore;
+    }
+
+    /* Load every vehicle before the web server starts taking requests */
+    @Override
+    public void afterSingletonsInstantiated() {
+        lock.writeLock().lock();
+        try {
+            vehicleStore.scan(VehicleQuery.of(null, null, null, null), this::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Vehicle> findPage(VehicleQuery query, int afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            boolean[] makeFilter = filter(query.getMakes(), makeCodes, makeValues.size());
+            boolean[] modelFilter = filter(query.getModels(), modelCodes, modelValues.size());
+            if (makeFilter == null && query.getMakes() != null || modelFilter == null && query.getModels() != null) {
+                return new ArrayList<>(); // none of the requested values exist
+            }
+            // year in [low, low + span] as one unsigned compare
+            int low = query.hasYearRange() ? query.getYearStart() : Integer.MIN_VALUE;
+            int span = query.hasYearRange() ? query.getYearEnd() - query.getYearStart() : -1;
+
+            List<Vehicle> page = new ArrayList<>(Math.min(limit, 1024));
+            int[] ids = this.ids;
+            int[] years = this.years;
+            int[] makes = this.makes;
+            int[] models = this.models;
+            for (int row = firstRowAfter(afterId); row < size && page.size() < limit; row++) {
+                int make = makes[row];
+                if (make == DELETED
+                        || Integer.compareUnsigned(years[row] - low, span) > 0
+                        || makeFilter != null && !makeFilter[make]
+                        || modelFilter != null && !modelFilter[models[row]]) {
+                    continue;
+                }
+                page.add(vehicle(row, ids[row]));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Only committed changes are applied, the listener waits while the initial load runs.
+    // Stale events (see VehicleChangedEvent) are skipped
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onVehicleChanged(VehicleChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (tombstones.contains(event.getId())) {
+                return;
+            }
+            int row = Arrays.binarySearch(ids, 0, size, event.getId());
+            boolean present = row >= 0 && makes[row] != DELETED;
+            if (event.getType() != VehicleChangedEvent.Type.DELETED
+                    && present && event.getVersion() < versions[row]) {
+                return;
+            }
+            switch (event.getType()) {
+                case DELETED:
+                    tombstones.add(event.getId());
+                    if (present) {
+                        makes[row] = DELETED;
+                        deleted++;
+                        compactIfSparse();
+                    }
+                    break;
+                case PATCHED:
+                    // Only the changed fields, the rest is in the row if it is the version right before the
+                    // patch. Otherwise an earlier write is still on its way and the row is read back,
+                    // like in VehicleSearchIndex
+                    if (!present || versions[row] < event.getVersion() - 1) {
+                        vehicleStore.findAllById(List.of(event.getId())).forEach(this::put);
+                    } else {
+                        if (event.getYear() != null) {
+                            years[row] = event.getYear();
+                        }
+                        if (event.getMake() != null) {
+                            makes[row] = code(event.getMake(), makeCodes, makeValues);
+                        }
+                        if (event.getModel() != null) {
+                            models[row] = code(event.getModel(), modelCodes, modelValues);
+                        }
+                        versions[row] = event.getVersion();
+                    }
+                    break;
+                default:
+                    Vehicle vehicle = new Vehicle(event.getYear(), event.getMake(), event.getModel());
+                    vehicle.setId(event.getId());
+                    vehicle.setVersion(event.getVersion());
+                    put(vehicle);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Insert or overwrite the row of a vehicle. IDs mostly arrive in order, so this is usually an append
+    private void put(Vehicle vehicle) {
+        int row = Arrays.binarySearch(ids, 0, size, vehicle.getId());
+        if (row < 0) {
+            row = -row - 1;
+            grow();
+            if (row < size) {
+                shift(row);
+            }
+            size++;
+        } else if (makes[row] == DELETED) {
+            deleted--;
+        }
+        ids[row] = vehicle.getId();
+        years[row] = vehicle.getYear();
+        versions[row] = vehicle.getVersion();
+        makes[row] = code(vehicle.getMake(), makeCodes, makeValues);
+        models[row] = code(vehicle.getModel(), modelCodes, modelValues);
+    }
+
+    private Vehicle vehicle(int row, int id) {
+        Vehicle vehicle = new Vehicle(years[row], makeValues.get(makes[row]), modelValues.get(models[row]));
+        vehicle.setId(id);
+        vehicle.setVersion(versions[row]);
+        return vehicle;
+    }
+
+    private int firstRowAfter(int afterId) {
+        int row = Arrays.binarySearch(ids, 0, size, afterId);
+        return row >= 0 ? row + 1 : -row - 1;
+    }
+
+    // Codes accepted by an IN filter, null if there is no filter or none of its values has a code
+    private static boolean[] filter(List<String> values, Map<String, Integer> codes, int count) {
+        if (values == null) {
+            return null;
+        }
+        boolean[] accepted = new boolean[count];
+        boolean any = false;
+        for (String value : values) {
+            Integer code = codes.get(value);
+            if (code != null) {
+                accepted[code] = true;
+                any = true;
+            }
+        }
+        return any ? accepted : null;
+    }
+
+    // A new value gets the next dictionary code
+    private static int code(String value, Map<String, Integer> codes, List<String> values) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    private void grow() {
+        if (size < ids.length) {
+            return;
+        }
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        years = Arrays.copyOf(years, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        makes = Arrays.copyOf(makes, capacity);
+        models = Arrays.copyOf(models, capacity);
+    }
+
+    // Make room for a row at an id below the last one, only when ids are committed out of order
+    private void shift(int row) {
+        int count = size - row;
+        System.arraycopy(ids, row, ids, row + 1, count);
+        System.arraycopy(years, row, years, row + 1, count);
+        System.arraycopy(versions, row, versions, row + 1, count);
+        System.arraycopy(makes, row, makes, row + 1, count);
+        System.arraycopy(models, row, models, row + 1, count);
+    }
+
+    // Drop deleted rows once they are half of the arrays, so scans do not keep skipping them
+    private void compactIfSparse() {
+        if (deleted < INITIAL_CAPACITY || deleted * 2 < size) {
+            return;
+        }
+        int live = 0;
+        for (int row = 0; row < size; row++) {
+            if (makes[row] != DELETED) {
+                ids[live] = ids[row];
+                years[live] = years[row];
+                versions[live] = versions[row];
+                makes[live] = makes[row];
+                models[live] = models[row];
+                live++;
+            }
+        }
+        size = live;
+        deleted = 0;
+    }
+}
@@ -0,0 +1,23 @@
+package com.andy.application.MitchellOA;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+
+// The VehicleSearchIndexTest comparisons against SQL, with the column snapshot as the engine
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, properties = "vehicles.search.engine=columnar")
+public class VehicleColumnSnapshotTest extends VehicleSearchIndexTest {
+    @Autowired
+    private VehicleSearchEngine vehicleSearchEngine;
+
+    @Override
+    @Test
+    public void testIndexIsTheConfiguredEngine() {
+        Assert.assertTrue(vehicleSearchEngine instanceof VehicleColumnSnapshot);
+    }
+}
@@ -1,158 +1,421 @@
 package com.andy.application.MitchellOA;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.repository.NoRepositoryBean;
 import org.springframework.data.rest.webmvc.ResourceNotFoundException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.function.Supplier;
 
 // Controller class
 @RestController
+@Profile("!reactive")
 @NoRepositoryBean
 public class VehicleController {
-    private final int YEAR_START = 1950;
-    private final int YEAR_END = 2050;
-
-    private final VehicleRepository vehicleRepository;
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final String APPLICATION_MERGE_PATCH_JSON = "application/merge-patch+json";
+    private static final Set<String> PATCH_FIELDS = new HashSet<>(Arrays.asList("year", "make", "model"));
+    // every endpoint gets a latency histogram under this name, tagged by operation
+    static final String REQUEST_TIMER = "vehicles.requests";
+
+    private final VehicleStore vehicleStore;
+    private final VehicleValidator vehicleValidator;
+    private final VehicleBatchService vehicleBatchService;
+    private final VehicleSearchEngine vehicleSearchEngine;
+    private final VehicleSearchCache vehicleSearchCache;
+    private final ObjectMapper objectMapper;
+    // only there with vehicles.changes.enabled
+    private final ObjectProvider<VehicleChangeOutbox> changeOutbox;
+    private final int maxPageSize;
+    private final int maxResults;
+    private final int exportFetchSize;
+    private final int maxBatchSize;
+    private final DistributionSummary searchRows;
 
     // VehicleController Constructor
-    public VehicleController(VehicleRepository vehicleRepository) {
-        this.vehicleRepository = vehicleRepository;
+    public VehicleController(VehicleStore vehicleStore,
+                             VehicleValidator vehicleValidator,
+                             VehicleBatchService vehicleBatchService,
+                             VehicleSearchEngine vehicleSearchEngine,
+                             VehicleSearchCache vehicleSearchCache,
+                             MeterRegistry meterRegistry,
+                             ObjectMapper objectMapper,
+                             ObjectProvider<VehicleChangeOutbox> changeOutbox,
+                             @Value("${vehicles.search.max-page-size:1000}") int maxPageSize,
+                             @Value("${vehicles.search.max-results:10000}") int maxResults,
+                             @Value("${vehicles.export.fetch-size:500}") int exportFetchSize,
+                             @Value("${vehicles.batch.max-size:10000}") int maxBatchSize) {
+        this.vehicleStore = vehicleStore;
+        this.vehicleValidator = vehicleValidator;
+        this.vehicleBatchService = vehicleBatchService;
+        this.vehicleSearchEngine = vehicleSearchEngine;
+        this.vehicleSearchCache = vehicleSearchCache;
+        this.objectMapper = objectMapper;
+        this.changeOutbox = changeOutbox;
+        this.maxPageSize = maxPageSize;
+        this.maxResults = maxResults;
+        this.exportFetchSize = exportFetchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.searchRows = DistributionSummary.builder("vehicles.search.rows")
+                .description("Vehicles returned per GET /vehicles call")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
-    /* Get vehicles from repo via one or more vehicle properties */
+    /* Get vehicles from repo via one or more vehicle properties.
+       Passing limit and/or cursor switches to keyset paging, the next page is sent in the Link header.
+       With the change feed on, X-Change-Seq is where GET /vehicles/changes picks up after this result */
     @GetMapping("/vehicles")
+    @Timed(value = REQUEST_TIMER, extraTags = {"operation", "search"}, histogram = true)
     public ResponseEntity<List<Vehicle>> getVehicles(
             @RequestParam(value = "yearStart", required = false) Integer yearStart,
             @RequestParam(value =  "yearEnd", required = false) Integer yearEnd,
             @RequestParam(value = "model", required = false) String model,
-            @RequestParam(value = "make", required = false) String make )  {
+            @RequestParam(value = "make", required = false) String make,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor)  {
+
+        int pageSize = pageSize(limit, cursor);
+        HttpHeaders headers = changeSeq();
+
+        // Let the search engine do the filtering, reading one extra row to know if there is a next page
+        VehicleQuery query = VehicleQuery.of(yearStart, yearEnd, make, model);
+        int afterId = VehicleCursor.decode(cursor);
+        int rows = pageSize + 1;
+        List<Vehicle> vehicles = vehicleSearchCache.get(query, afterId, rows,
+                () -> vehicleSearchEngine.findPage(query, afterId, rows));
+
+        if (vehicles.size() > pageSize) {
+            vehicles = vehicles.subList(0, pageSize);
+            headers.add(HttpHeaders.LINK, nextLink(vehicles.get(pageSize - 1).getId()));
+        }
+        searchRows.record(vehicles.size());
 
-        // Turn list of all vehicles into a stream
-        List<Vehicle> allVehicles = vehicleRepository.findAll();
-        Stream<Vehicle> s = allVehicles.stream();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).headers(headers).body(vehicles);
+    }
 
-        // Return if empty - no input
-        if(yearStart==null && yearEnd==null && model==null && make==null) {
-            return ResponseEntity.status(HttpStatus.ACCEPTED).body(allVehicles);
+    /* GET /vehicles with fields=year,make,... returns only those fields (and the id), same filters and paging.
+       Only the selected columns are read and no entity is loaded, so it skips the search cache and the index */
+    @GetMapping(value = "/vehicles", params = "fields")
+    @Timed(value = REQUEST_TIMER, extraTags = {"operation", "search_fields"}, histogram = true)
+    public ResponseEntity<List<VehicleFields>> getVehicleFields(
+            @RequestParam(value = "yearStart", required = false) Integer yearStart,
+            @RequestParam(value =  "yearEnd", required = false) Integer yearEnd,
+            @RequestParam(value = "model", required = false) String model,
+            @RequestParam(value = "make", required = false) String make,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "fields") String fields) {
+        Set<String> selected = new LinkedHashSet<>(Arrays.asList(fields.split(",")));
+        if (!VehicleFields.NAMES.containsAll(selected)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "fields can be " + VehicleFields.NAMES);
         }
+        int pageSize = pageSize(limit, cursor);
+        HttpHeaders headers = changeSeq();
 
-        // Filter vehicles by yearStart and yearEnd
-        if (yearStart != null && yearEnd != null && (yearStart <= yearEnd)) {
-            s = s.filter(v->(v.getYear() >= yearStart && v.getYear() <= yearEnd));
+        VehicleQuery query = VehicleQuery.of(yearStart, yearEnd, make, model);
+        List<VehicleFields> vehicles = vehicleStore.findPageFields(query, selected,
+                VehicleCursor.decode(cursor), pageSize + 1);
+
+        if (vehicles.size() > pageSize) {
+            vehicles = vehicles.subList(0, pageSize);
+            headers.add(HttpHeaders.LINK, nextLink(vehicles.get(pageSize - 1).getId()));
         }
+        searchRows.record(vehicles.size());
 
-        // Filter vehicles by model
-        if (model != null) {
-            List<String> models = Arrays.asList(model.split(","));
-            s = s.filter(v->models.contains(v.getModel()));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).headers(headers).body(vehicles);
+    }
+
+    /* Facet counts (per make, per model, per year bucket) and the min/max year of the vehicles matching
+       the same filters as GET /vehicles, grouped in the database instead of by the client */
+    @GetMapping("/vehicles/stats")
+    @Timed(value = REQUEST_TIMER, extraTags = {"operation", "stats"}, histogram = true)
+    public ResponseEntity<VehicleStats> getVehicleStats(
+            @RequestParam(value = "yearStart", required = false) Integer yearStart,
+            @RequestParam(value =  "yearEnd", required = false) Integer yearEnd,
+            @RequestParam(value = "model", required = false) String model,
+            @RequestParam(value = "make", required = false) String make,
+            @RequestParam(value = "yearBucket", defaultValue = "1") int yearBucket) {
+        if (yearBucket <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid yearBucket");
         }
+        VehicleQuery query = VehicleQuery.of(yearStart, yearEnd, make, model);
 
-        // Filter vehicles by make
-        if (make != null) {
-            List<String> makes = Arrays.asList(make.split(","));
-            s = s.filter(v->makes.contains(v.getMake()));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(vehicleStore.findStats(query, yearBucket));
+    }
+
+    // Passing limit and/or cursor pages the results, unpaged calls are still capped by the server side maximum
+    private int pageSize(Integer limit, String cursor) {
+        int pageSize = maxResults;
+        if (limit != null || cursor != null) {
+            pageSize = limit == null ? maxPageSize : Math.min(limit, maxPageSize);
+        }
+        if (pageSize <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid limit");
         }
+        return pageSize;
+    }
+
+    // Link header value for the page after lastId, same request with the cursor replaced
+    private static String nextLink(int lastId) {
+        String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("cursor", VehicleCursor.encode(lastId))
+                .build().toUriString();
+        return "<" + next + ">; rel=\"next\"";
+    }
 
-        return ResponseEntity.status(HttpStatus.ACCEPTED).body(s.collect(Collectors.toList()));
+    // Read before the search: a change feed consumer continuing from it may see a change twice, never miss one
+    private HttpHeaders changeSeq() {
+        HttpHeaders headers = new HttpHeaders();
+        VehicleChangeOutbox outbox = changeOutbox.getIfAvailable();
+        if (outbox != null) {
+            headers.add(VehicleChangeController.SEQ_HEADER, Long.toString(outbox.horizon()));
+        }
+        return headers;
     }
 
 
-    /* Gets vehicle object from repo via ID*/
+    /* Stream every matching vehicle as newline delimited JSON, one row at a time.
+       Heap use does not depend on the table size */
+    @GetMapping(value = "/vehicles/export", produces = APPLICATION_NDJSON)
+    @Timed(value = REQUEST_TIMER, extraTags = {"operation", "export"}, histogram = true)
+    public ResponseEntity<StreamingResponseBody> exportVehicles(
+            @RequestParam(value = "yearStart", required = false) Integer yearStart,
+            @RequestParam(value =  "yearEnd", required = false) Integer yearEnd,
+            @RequestParam(value = "model", required = false) String model,
+            @RequestParam(value = "make", required = false) String make) {
+        VehicleQuery query = VehicleQuery.of(yearStart, yearEnd, make, model);
+        ObjectWriter writer = objectMapper.writerFor(Vehicle.class);
+
+        StreamingResponseBody body = out -> {
+            int[] rows = {0};
+            vehicleStore.scan(query, vehicle -> {
+                try {
+                    out.write(writer.writeValueAsBytes(vehicle));
+                    out.write('\n');
+
+                    // push each fetched batch to the client instead of buffering it
+                    if (++rows[0] % exportFetchSize == 0) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        };
+
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON)).body(body);
+    }
+
+    /* Gets vehicle object from repo via ID.
+       The ETag is the vehicle version, a matching If-None-Match gets 304 and no body */
     @GetMapping("/vehicles/{id}")
-    public ResponseEntity<Vehicle> getVehiclesById(@PathVariable(value="id") int vehicleID)
+    @Timed(value = REQUEST_TIMER, extraTags = {"operation", "get"}, histogram = true)
+    public ResponseEntity<Vehicle> getVehiclesById(@PathVariable(value="id") int vehicleID, WebRequest webRequest)
             throws ResourceNotFoundException {
-        Vehicle vehicle = vehicleRepository
+        Vehicle vehicle = vehicleStore
                 .findById(vehicleID)
                 .orElseThrow(() -> new ResourceNotFoundException("Invalid ID"));
 
-        return ResponseEntity.status(HttpStatus.ACCEPTED).body(vehicle);
+        String eTag = eTag(vehicle);
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).eTag(eTag).body(vehicle);
     }
 
-    /* Add a brand new vehicle to the repo */
+    /* Add a brand new vehicle to the repo, 400 listing the broken rules if it is not valid */
     @PostMapping("/vehicles")
+    @Timed(value = REQUEST_TIMER, extraTags = {"operation", "create"}, histogram = true)
     public ResponseEntity createVehicle(@RequestBody Vehicle vehicle) {
         // reset vehicle ID
         vehicle.setId(0);
-        boolean errorVehicle = false;
 
-        // Make sure new vehicle years is within range of YEAR_START and YEAR_END
-        if (!(vehicle.getYear() >= YEAR_START && vehicle.getYear() <= YEAR_END)) {
-            System.err.println("ERROR: Vehicle year not within range");
-            errorVehicle = true;
+        // Make sure year, make and model are valid, 400 with the broken rules if not
+        Set<VehicleViolation> violations = vehicleValidator.validate(vehicle);
+        if (!violations.isEmpty()) {
+            throw new VehicleValidationException("create", violations);
         }
 
-        // Make sure new vehicle make is not null and has a valid make
-        if (vehicle.getMake() == null || vehicle.getMake().length() == 0) {
-            System.err.println("ERROR: Make was not valid");
-            errorVehicle = true;
+        vehicleStore.insert(vehicle);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(vehicle);
+    }
+
+    /* Add many vehicles at once, every item is validated on its own and saved with JDBC batching */
+    @PostMapping("/vehicles/batch")
+    @Timed(value = REQUEST_TIMER, extraTags = {"operation", "create_batch"}, histogram = true)
+    public ResponseEntity<List<VehicleBatchResult>> createVehicles(@RequestBody List<Vehicle> vehicles) {
+        checkBatchSize(vehicles);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(vehicleBatchService.create(vehicles));
+    }
+
+    /* Updates the information of an existing vehicle, 400 listing the broken rules if the new values are not valid */
+    @PutMapping("/vehicles")
+    @Timed(value = REQUEST_TIMER, extraTags = {"operation", "update"}, histogram = true)
+    public ResponseEntity updateVehicle(@RequestBody Vehicle vehicleSpecs,
+                                        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                                List<String> ifMatch) throws ResourceNotFoundException {
+        return update(vehicleSpecs.getId(), vehicleSpecs, ifMatch);
+    }
+
+    /* Same as PUT /vehicles with the ID taken from the path */
+    @PutMapping("/vehicles/{id}")
+    @Timed(value = REQUEST_TIMER, extraTags = {"operation", "update"}, histogram = true)
+    public ResponseEntity updateVehicleById(@PathVariable(value = "id") int vehicleID,
+                                            @RequestBody Vehicle vehicleSpecs,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                                    List<String> ifMatch) throws ResourceNotFoundException {
+        return update(vehicleID, vehicleSpecs, ifMatch);
+    }
+
+    // Optimistic update: no row lock is taken, the UPDATE only matches the version that was read.
+    // If-Match with an older ETag gets 412, losing a race against another write gets 409
+    private ResponseEntity<Vehicle> update(int vehicleID, Vehicle vehicleSpecs, List<String> ifMatch)
+            throws ResourceNotFoundException {
+        // nothing is written unless every field is valid
+        Set<VehicleViolation> violations = vehicleValidator.validate(vehicleSpecs);
+        if (!violations.isEmpty()) {
+            throw new VehicleValidationException("update", violations);
         }
 
-        // Make sure new vehicle model is not null and has a valid model
-        if (vehicle.getModel() == null || vehicle.getModel().length() == 0) {
-            System.err.println("ERROR: Model was not valid");
-            errorVehicle = true;
+        Vehicle current =
+                vehicleStore.findById(vehicleID)
+                .orElseThrow(()->new ResourceNotFoundException("Invalid ID"));
+        checkIfMatch(ifMatch, current);
+
+        // work on a copy, the one from findById may be shared through the cache
+        Vehicle vehicle = new Vehicle(current.getYear(), current.getMake(), current.getModel());
+        vehicle.setId(current.getId());
+        vehicle.setVersion(current.getVersion());
+        vehicle.setYear(vehicleSpecs.getYear());
+        vehicle.setMake(vehicleSpecs.getMake());
+        vehicle.setModel(vehicleSpecs.getModel());
+
+        // save updated vehicle to repository
+        Vehicle saved = saveVersioned(() -> vehicleStore.update(vehicle));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).eTag(eTag(saved)).body(saved);
+    }
+
+    /* Partial update with a JSON merge patch of year, make and/or model.
+       A single conditional write in the store (one UPDATE statement with JPA), which also checks If-Match */
+    @PatchMapping(value = "/vehicles/{id}", consumes = {APPLICATION_MERGE_PATCH_JSON, MediaType.APPLICATION_JSON_VALUE})
+    @Timed(value = REQUEST_TIMER, extraTags = {"operation", "patch"}, histogram = true)
+    public ResponseEntity<String> patchVehicle(@PathVariable(value = "id") int vehicleID,
+                                               @RequestBody Map<String, Object> patch,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                                       List<String> ifMatch) throws ResourceNotFoundException {
+        if (!PATCH_FIELDS.containsAll(patch.keySet())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Only year, make and model can be patched");
+        }
+        Set<VehicleViolation> violations = vehicleValidator.validatePatch(patch);
+        if (!violations.isEmpty()) {
+            throw new VehicleValidationException("patch", violations);
         }
 
-        // successfully saves vehicle to repo if not error
-        if(!errorVehicle) {
-            vehicleRepository.save(vehicle);
+        Integer year = (Integer) patch.get("year");
+        String make = (String) patch.get("make");
+        String model = (String) patch.get("model");
+        long expectedVersion = expectedVersion(ifMatch);
+
+        OptionalLong version = vehicleStore.patch(vehicleID, year, make, model, expectedVersion);
+        if (version.isEmpty()) {
+            // only a failed patch pays for the extra lookup
+            if (!vehicleStore.existsById(vehicleID)) {
+                throw new ResourceNotFoundException("Invalid ID");
+            }
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Vehicle has changed");
         }
 
-        return ResponseEntity.status(HttpStatus.ACCEPTED).body(vehicle);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).eTag("\"" + version.getAsLong() + "\"")
+                .body("Vehicle Updated");
     }
 
-    /* Updates the information of an existing vehicle */
-    @PutMapping("/vehicles")
-    public ResponseEntity updateVehicle(@RequestBody Vehicle vehicleSpecs) throws ResourceNotFoundException {
-        Vehicle vehicle =
-                vehicleRepository.findById(vehicleSpecs.getId())
-                .orElseThrow(()->new ResourceNotFoundException("Invalid ID"));
+    /* Update many vehicles at once, an item that breaks a rule is rejected and left unchanged like PUT /vehicles */
+    @PutMapping("/vehicles/batch")
+    @Timed(value = REQUEST_TIMER, extraTags = {"operation", "update_batch"}, histogram = true)
+    public ResponseEntity<List<VehicleBatchResult>> updateVehicles(@RequestBody List<Vehicle> vehicles) {
+        checkBatchSize(vehicles);
+        List<VehicleBatchResult> results = saveVersioned(() -> vehicleBatchService.update(vehicles));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(results);
+    }
 
-        // ensure update years are valid
-        if (vehicleSpecs.getYear() >= YEAR_START && vehicleSpecs.getYear() <= YEAR_END) {
-            vehicle.setYear(vehicleSpecs.getYear());
-        } else {
-            System.err.println("ERROR: Vehicle year not within range. Year was not updated.");
+    private void checkBatchSize(List<Vehicle> vehicles) {
+        if (vehicles.size() > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "At most " + maxBatchSize + " vehicles per batch");
         }
+    }
 
-        // ensure update make is not null and is valid
-        if (vehicleSpecs.getMake() != null && vehicleSpecs.getMake().length() != 0) {
-            vehicle.setMake(vehicleSpecs.getMake());
-        } else {
-            System.err.println("ERROR: Make was not valid. Make was not updated.");
+    static String eTag(Vehicle vehicle) {
+        return "\"" + vehicle.getVersion() + "\"";
+    }
 
+    // No If-Match or "*" means an unconditional update
+    static void checkIfMatch(List<String> ifMatch, Vehicle vehicle) {
+        if (ifMatch == null || ifMatch.isEmpty()) {
+            return;
+        }
+        String eTag = eTag(vehicle);
+        for (String value : ifMatch) {
+            if (value.trim().equals("*") || value.trim().equals(eTag)) {
+                return;
+            }
         }
+        throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED,
+                "Vehicle has changed, current ETag is " + eTag);
+    }
 
-        // ensure update model is not null and is valid
-        if (vehicleSpecs.getModel() != null && vehicleSpecs.getModel().length() != 0) {
-            vehicle.setModel(vehicleSpecs.getModel());
-        } else {
-            System.err.println("ERROR: Model was not valid. Model was not updated.");
+    // Version that a single UPDATE can check: -1 for no If-Match or "*"
+    private static long expectedVersion(List<String> ifMatch) {
+        if (ifMatch == null || ifMatch.isEmpty() || ifMatch.stream().anyMatch(value -> value.trim().equals("*"))) {
+            return -1;
         }
+        String eTag = ifMatch.size() == 1 ? ifMatch.get(0).trim() : "";
+        if (!eTag.matches("\"\\d{1,18}\"")) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED,
+                    "If-Match takes one ETag of this vehicle");
+        }
+        return Long.parseLong(eTag.substring(1, eTag.length() - 1));
+    }
 
-        // save updated vehicle to repository
-        vehicleRepository.save(vehicle);
-        return ResponseEntity.status(HttpStatus.ACCEPTED).body(vehicle);
+    // Another request updated or deleted the same vehicle between our read and our write
+    private static <T> T saveVersioned(Supplier<T> save) {
+        try {
+            return save.get();
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Vehicle was changed by another request, retry");
+        }
     }
 
 
     /* Delete vehicle from repo via ID value*/
     @DeleteMapping("/vehicles/{id}")
+    @Timed(value = REQUEST_TIMER, extraTags = {"operation", "delete"}, histogram = true)
     public ResponseEntity<String> deleteVehicle(@PathVariable(value = "id") int vehicleID)
             throws ResourceNotFoundException {
-        // obtain vehicle
-        Vehicle vehicle =
-                vehicleRepository
-                        .findById(vehicleID)
-                        .orElseThrow(() -> new ResourceNotFoundException("Invalid ID"));
-
         // delete vehicle
-        vehicleRepository.delete(vehicle);
+        if (!saveVersioned(() -> vehicleStore.deleteById(vehicleID))) {
+            throw new ResourceNotFoundException("Invalid ID");
+        }
 
         return ResponseEntity.status(HttpStatus.ACCEPTED).body("Vehicle Deleted");
     }
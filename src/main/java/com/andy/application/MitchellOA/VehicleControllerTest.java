@@ -1,6 +1,12 @@
 package com.andy.application.MitchellOA;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.jupiter.api.MethodOrderer;
@@ -15,10 +21,20 @@ import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
 
-import java.util.List;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 
 @RunWith(SpringRunner.class)
@@ -29,6 +45,19 @@ public class VehicleControllerTest {
     @Autowired
     private TestRestTemplate restTemplate;
 
+    // bound to the same server, for requests TestRestTemplate cannot send (PATCH)
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+
+    @Autowired
+    private DetachedVehicleCache vehicleCache;
+
+    @Autowired
+    private VehicleStore vehicleStore;
+
     // Injected HTTP port that got allocated
     @LocalServerPort
     private int port;
@@ -111,67 +140,66 @@ public class VehicleControllerTest {
     @Order(13)
     public void testInvalidUpdateVehicleYear() {
         Vehicle vehicle = restTemplate.getForObject(getRootUrl() + "/vehicles/7", Vehicle.class);
+        Vehicle before = new Vehicle(vehicle.getYear(), vehicle.getMake(), vehicle.getModel());
         vehicle.setModel("Model10"); // set different model
         vehicle.setYear(1949); // set invalid year
         vehicle.setMake("Make10"); // set different make
 
-        HttpHeaders headers = new HttpHeaders();
-        HttpEntity<Vehicle> entity = new HttpEntity<>(vehicle, headers);
-
-        ResponseEntity<Vehicle> updatedVehicle = restTemplate.exchange(getRootUrl() + "/vehicles",
-                HttpMethod.PUT, entity, Vehicle.class); // update vehicle
-
-        Assert.assertEquals(vehicle.getId(), updatedVehicle.getBody().getId()); // get vehicle via ID
-        Assert.assertEquals(2005, updatedVehicle.getBody().getYear()); // check updated year
-        Assert.assertEquals("Model10", updatedVehicle.getBody().getModel()); // check updated model
-        Assert.assertEquals( "Make10", updatedVehicle.getBody().getMake()); // check updated make
+        assertRejected(HttpMethod.PUT, "/vehicles", vehicle, "YEAR_OUT_OF_RANGE");
+        assertUnchanged(vehicle.getId(), before); // valid fields are not updated either
 
         vehicle.setYear(2051); // set invalid year
-        ResponseEntity<Vehicle> updatedVehicle2 = restTemplate.exchange(getRootUrl() + "/vehicles",
-                HttpMethod.PUT, entity, Vehicle.class); // update vehicle #2
-
-        Assert.assertEquals(vehicle.getId(), updatedVehicle2.getBody().getId()); // get vehicle via ID
-        Assert.assertEquals(2005, updatedVehicle2.getBody().getYear()); // check updated year
+        assertRejected(HttpMethod.PUT, "/vehicles/" + vehicle.getId(), vehicle, "YEAR_OUT_OF_RANGE");
+        assertUnchanged(vehicle.getId(), before);
     }
 
     @Test
     @Order(14)
     public void testInvalidUpdateVehicleMake() {
         Vehicle vehicle = restTemplate.getForObject(getRootUrl() + "/vehicles/8", Vehicle.class);
+        Vehicle before = new Vehicle(vehicle.getYear(), vehicle.getMake(), vehicle.getModel());
         vehicle.setModel("Model10"); // set different model
-        vehicle.setYear(2000); // set invalid year
-        vehicle.setMake(""); // set different make
+        vehicle.setYear(2000); // set different year
+        vehicle.setMake(""); // set invalid make
 
-        HttpHeaders headers = new HttpHeaders();
-        HttpEntity<Vehicle> entity = new HttpEntity<>(vehicle, headers);
-
-        ResponseEntity<Vehicle> updatedVehicle = restTemplate.exchange(getRootUrl() + "/vehicles",
-                HttpMethod.PUT, entity, Vehicle.class); // update vehicle
-
-        Assert.assertEquals(vehicle.getId(), updatedVehicle.getBody().getId()); // get vehicle via ID
-        Assert.assertEquals(2000, updatedVehicle.getBody().getYear()); // check updated year
-        Assert.assertEquals("Model10", updatedVehicle.getBody().getModel()); // check updated model
-        Assert.assertEquals( "Make8", updatedVehicle.getBody().getMake()); // check updated make
+        assertRejected(HttpMethod.PUT, "/vehicles", vehicle, "INVALID_MAKE");
+        assertUnchanged(vehicle.getId(), before);
     }
 
     @Test
     @Order(15)
     public void testInvalidUpdateVehicleModel() {
         Vehicle vehicle = restTemplate.getForObject(getRootUrl() + "/vehicles/9", Vehicle.class);
-        vehicle.setModel(""); // set different model
-        vehicle.setYear(2000); // set invalid year
+        Vehicle before = new Vehicle(vehicle.getYear(), vehicle.getMake(), vehicle.getModel());
+        vehicle.setModel(""); // set invalid model
+        vehicle.setYear(1949); // set invalid year
         vehicle.setMake("Make10"); // set different make
 
-        HttpHeaders headers = new HttpHeaders();
-        HttpEntity<Vehicle> entity = new HttpEntity<>(vehicle, headers);
+        assertRejected(HttpMethod.PUT, "/vehicles", vehicle, "YEAR_OUT_OF_RANGE", "INVALID_MODEL");
+        assertUnchanged(vehicle.getId(), before);
+    }
 
-        ResponseEntity<Vehicle> updatedVehicle = restTemplate.exchange(getRootUrl() + "/vehicles",
-                HttpMethod.PUT, entity, Vehicle.class); // update vehicle
+    // 400 with exactly these rules in the violations list
+    private void assertRejected(HttpMethod method, String path, Vehicle vehicle, String... rules) {
+        ResponseEntity<JsonNode> response = restTemplate.exchange(getRootUrl() + path, method,
+                new HttpEntity<>(vehicle), JsonNode.class);
+
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        Assert.assertEquals(400, response.getBody().get("status").asInt());
+        JsonNode violations = response.getBody().get("violations");
+        Assert.assertEquals(rules.length, violations.size());
+        for (int i = 0; i < rules.length; i++) {
+            Assert.assertEquals(rules[i], violations.get(i).get("rule").asText());
+            Assert.assertTrue(violations.get(i).hasNonNull("field"));
+            Assert.assertTrue(violations.get(i).hasNonNull("message"));
+        }
+    }
 
-        Assert.assertEquals(vehicle.getId(), updatedVehicle.getBody().getId()); // get vehicle via ID
-        Assert.assertEquals(2000, updatedVehicle.getBody().getYear()); // check updated year
-        Assert.assertEquals("Model9", updatedVehicle.getBody().getModel()); // check updated model
-        Assert.assertEquals( "Make10", updatedVehicle.getBody().getMake()); // check updated make
+    private void assertUnchanged(int id, Vehicle before) {
+        Vehicle after = restTemplate.getForObject(getRootUrl() + "/vehicles/" + id, Vehicle.class);
+        Assert.assertEquals(before.getYear(), after.getYear());
+        Assert.assertEquals(before.getMake(), after.getMake());
+        Assert.assertEquals(before.getModel(), after.getModel());
     }
 
     @Test
@@ -351,55 +379,499 @@ public class VehicleControllerTest {
     @Test
     @Order(16)
     public void testCreateInvalidVehicleYear() {
+        assertRejected(HttpMethod.POST, "/vehicles", new Vehicle(1949, "InvalidYearMake", "InvalidYearModel"), "YEAR_OUT_OF_RANGE");
+
+        Vehicle[] saved = restTemplate.getForObject(getRootUrl() + "/vehicles?make=InvalidYearMake", Vehicle[].class);
+        Assert.assertEquals(0, saved.length); // nothing was saved
+    }
+
+    @Test
+    @Order(17)
+    public void testCreateInvalidVehicleMake() {
+        assertRejected(HttpMethod.POST, "/vehicles", new Vehicle(2000, "", "InvalidMakeModel"), "INVALID_MAKE");
+
+        Vehicle[] saved = restTemplate.getForObject(getRootUrl() + "/vehicles?model=InvalidMakeModel", Vehicle[].class);
+        Assert.assertEquals(0, saved.length); // nothing was saved
+    }
+
+    @Test
+    @Order(18)
+    public void testCreateInvalidVehicleModel() {
+        assertRejected(HttpMethod.POST, "/vehicles", new Vehicle(2000, "InvalidModelMake", ""), "INVALID_MODEL");
+
+        Vehicle[] saved = restTemplate.getForObject(getRootUrl() + "/vehicles?make=InvalidModelMake", Vehicle[].class);
+        Assert.assertEquals(0, saved.length); // nothing was saved
+    }
+
+    @Test
+    @Order(19)
+    public void testFilterMatchesInMemoryFilter() {
         HttpHeaders headers = new HttpHeaders();
-        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        HttpEntity<Object> entity = new HttpEntity<>(null, headers);
+        String[] queries = {"yearStart=1950&yearEnd=2000", "make=Make1,Make2,Make3", "model=Model5,Model6",
+                "yearStart=2000&yearEnd=2002&make=Make2,Make4,Make5", "model=Model1&make=Make1",
+                "yearStart=2001&yearEnd=2000&model=Model3", "make=Make9&yearStart=2050"};
 
-        Vehicle vehicle = new Vehicle(1949, "Make10", "Model10");
+        ResponseEntity<List<Vehicle>> all = restTemplate.exchange(getRootUrl() + "/vehicles",
+                HttpMethod.GET, entity, new ParameterizedTypeReference<>() {});
 
-        ResponseEntity<Vehicle> created =
-                restTemplate.postForEntity(getRootUrl() + "/vehicles", vehicle, Vehicle.class); // add vehicle
-        ResponseEntity<Vehicle> vehicle2 = restTemplate.exchange(getRootUrl() + "/vehicles/" +
-                created.getBody().getId(), HttpMethod.GET, entity, Vehicle.class);
+        for (String query : queries) {
+            Map<String, String> params = new HashMap<>();
+            for (String param : query.split("&")) {
+                params.put(param.split("=")[0], param.split("=")[1]);
+            }
+
+            // Filter the full list the way getVehicles used to, in memory
+            Stream<Vehicle> s = all.getBody().stream();
+            if (params.containsKey("yearStart") && params.containsKey("yearEnd")) {
+                int yearStart = Integer.parseInt(params.get("yearStart"));
+                int yearEnd = Integer.parseInt(params.get("yearEnd"));
+                if (yearStart <= yearEnd) {
+                    s = s.filter(v -> v.getYear() >= yearStart && v.getYear() <= yearEnd);
+                }
+            }
+            if (params.containsKey("model")) {
+                List<String> models = Arrays.asList(params.get("model").split(","));
+                s = s.filter(v -> models.contains(v.getModel()));
+            }
+            if (params.containsKey("make")) {
+                List<String> makes = Arrays.asList(params.get("make").split(","));
+                s = s.filter(v -> makes.contains(v.getMake()));
+            }
+            List<Vehicle> expected = s.collect(Collectors.toList());
+
+            ResponseEntity<List<Vehicle>> response = restTemplate.exchange(getRootUrl() + "/vehicles?" + query,
+                    HttpMethod.GET, entity, new ParameterizedTypeReference<>() {});
+
+            Assert.assertEquals(query, expected, response.getBody()); // same rows in the same order
+        }
+    }
+
+    @Test
+    @Order(20)
+    public void testGetVehiclesWithCursor() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<Object> entity = new HttpEntity<>(null, headers);
 
-        Assert.assertEquals(0, vehicle2.getBody().getYear());
-        Assert.assertNull( vehicle2.getBody().getMake());
-        Assert.assertNull( vehicle2.getBody().getModel());
+        ResponseEntity<List<Vehicle>> all = restTemplate.exchange(getRootUrl() + "/vehicles?make=Make1,Make2,Make3",
+                HttpMethod.GET, entity, new ParameterizedTypeReference<>() {});
+
+        // Walk the pages by following the next link until there is none
+        List<Vehicle> paged = new ArrayList<>();
+        String url = getRootUrl() + "/vehicles?make=Make1,Make2,Make3&limit=2";
+        while (url != null) {
+            ResponseEntity<List<Vehicle>> page = restTemplate.exchange(URI.create(url),
+                    HttpMethod.GET, entity, new ParameterizedTypeReference<List<Vehicle>>() {});
+            Assert.assertTrue(page.getBody().size() <= 2); // page size is respected
+            paged.addAll(page.getBody());
+
+            String link = page.getHeaders().getFirst(HttpHeaders.LINK);
+            url = link == null ? null : link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+        }
+
+        Assert.assertEquals(all.getBody(), paged); // pages add up to the unpaged result
     }
 
     @Test
-    @Order(17)
-    public void testCreateInvalidVehicleMake() {
+    @Order(21)
+    public void testGetVehiclesWithInvalidCursor() {
+        ResponseEntity<String> response = restTemplate.getForEntity(getRootUrl() +
+                "/vehicles?cursor=not-a-cursor", String.class);
+
+        Assert.assertEquals(400, response.getStatusCodeValue());
+    }
+
+    @Test
+    @Order(22)
+    public void testExportVehicles() throws Exception {
         HttpHeaders headers = new HttpHeaders();
-        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        HttpEntity<Object> entity = new HttpEntity<>(null, headers);
 
-        Vehicle vehicle = new Vehicle(1949, "", "Model10");
+        ResponseEntity<List<Vehicle>> all = restTemplate.exchange(getRootUrl() + "/vehicles?make=Make1,Make2",
+                HttpMethod.GET, entity, new ParameterizedTypeReference<>() {});
+        ResponseEntity<String> export = restTemplate.getForEntity(getRootUrl() +
+                "/vehicles/export?make=Make1,Make2", String.class);
 
-        ResponseEntity<Vehicle> created =
-                restTemplate.postForEntity(getRootUrl() + "/vehicles", vehicle, Vehicle.class); // add vehicle
-        ResponseEntity<Vehicle> vehicle2 = restTemplate.exchange(getRootUrl() + "/vehicles/" +
-                created.getBody().getId(), HttpMethod.GET, entity, Vehicle.class);
+        Assert.assertEquals("application/x-ndjson", export.getHeaders().getContentType().toString());
 
-        Assert.assertEquals(0, vehicle2.getBody().getYear());
-        Assert.assertNull( vehicle2.getBody().getMake());
-        Assert.assertNull( vehicle2.getBody().getModel());
+        // one JSON document per line, same rows as the search
+        ObjectMapper mapper = new ObjectMapper();
+        List<Vehicle> exported = new ArrayList<>();
+        for (String line : export.getBody().split("\n")) {
+            exported.add(mapper.readValue(line, Vehicle.class));
+        }
+        Assert.assertEquals(all.getBody(), exported);
     }
 
     @Test
-    @Order(18)
-    public void testCreateInvalidVehicleModel() {
+    @Order(23)
+    public void testBatchCreateAndUpdateVehicles() {
+        List<Vehicle> vehicles = Arrays.asList(new Vehicle(2010, "BatchMake1", "BatchModel1"),
+                new Vehicle(1900, "BatchMake2", "BatchModel2"), // invalid year
+                new Vehicle(2012, "BatchMake3", "BatchModel3"));
+
+        ResponseEntity<List<VehicleBatchResult>> created = restTemplate.exchange(getRootUrl() + "/vehicles/batch",
+                HttpMethod.POST, new HttpEntity<>(vehicles), new ParameterizedTypeReference<>() {});
+
+        Assert.assertEquals(3, created.getBody().size());
+        Assert.assertEquals(VehicleBatchResult.Status.CREATED, created.getBody().get(0).getStatus());
+        Assert.assertEquals(VehicleBatchResult.Status.REJECTED, created.getBody().get(1).getStatus());
+        Assert.assertEquals(Collections.singletonList("Vehicle year not within range"),
+                created.getBody().get(1).getErrors());
+        Assert.assertEquals(VehicleBatchResult.Status.CREATED, created.getBody().get(2).getStatus());
+
+        Vehicle first = restTemplate.getForObject(getRootUrl() + "/vehicles/" +
+                created.getBody().get(0).getId(), Vehicle.class);
+        Assert.assertEquals("BatchMake1", first.getMake()); // saved vehicle can be read back
+
+        // update one vehicle, one with an invalid make and one that does not exist
+        Vehicle update1 = new Vehicle(2011, "BatchMake1", "BatchModel10");
+        update1.setId(created.getBody().get(0).getId());
+        Vehicle update2 = new Vehicle(2013, "", "BatchModel30");
+        update2.setId(created.getBody().get(2).getId());
+        Vehicle update3 = new Vehicle(2013, "BatchMake4", "BatchModel4");
+        update3.setId(Integer.MAX_VALUE);
+
+        ResponseEntity<List<VehicleBatchResult>> updated = restTemplate.exchange(getRootUrl() + "/vehicles/batch",
+                HttpMethod.PUT, new HttpEntity<>(Arrays.asList(update1, update2, update3)),
+                new ParameterizedTypeReference<>() {});
+
+        Assert.assertEquals(VehicleBatchResult.Status.UPDATED, updated.getBody().get(0).getStatus());
+        Assert.assertEquals(VehicleBatchResult.Status.REJECTED, updated.getBody().get(1).getStatus());
+        Assert.assertEquals(Collections.singletonList("Make was not valid"), updated.getBody().get(1).getErrors());
+        Assert.assertEquals(VehicleBatchResult.Status.NOT_FOUND, updated.getBody().get(2).getStatus());
+
+        first = restTemplate.getForObject(getRootUrl() + "/vehicles/" + update1.getId(), Vehicle.class);
+        Assert.assertEquals("BatchModel10", first.getModel()); // check updated model
+        Vehicle third = restTemplate.getForObject(getRootUrl() + "/vehicles/" + update2.getId(), Vehicle.class);
+        Assert.assertEquals(2012, third.getYear()); // rejected, nothing was updated
+        Assert.assertEquals("BatchMake3", third.getMake());
+        Assert.assertEquals("BatchModel3", third.getModel());
+    }
+
+    @Test
+    @Order(24)
+    public void testCachedVehicleIsRefreshedOnWrite() {
         HttpHeaders headers = new HttpHeaders();
-        HttpEntity<String> entity = new HttpEntity<String>(null, headers);
+        HttpEntity<String> entity = new HttpEntity<>(null, headers);
+        ResponseEntity<Vehicle> created = restTemplate.postForEntity(getRootUrl() +
+                "/vehicles", new Vehicle(2015, "CacheMake", "CacheModel"), Vehicle.class); // add vehicle
+        String url = getRootUrl() + "/vehicles/" + created.getBody().getId();
+
+        restTemplate.getForObject(url, Vehicle.class); // miss, loads the cache
+        Vehicle vehicle = restTemplate.getForObject(url, Vehicle.class); // hit
+
+        vehicle.setModel("CacheModel2");
+        restTemplate.exchange(getRootUrl() + "/vehicles", HttpMethod.PUT, new HttpEntity<>(vehicle), Vehicle.class);
+        Assert.assertEquals("CacheModel2", restTemplate.getForObject(url, Vehicle.class).getModel()); // not stale
+
+        restTemplate.exchange(url, HttpMethod.DELETE, entity, String.class);
+        Assert.assertEquals(404, restTemplate.getForEntity(url, String.class).getStatusCodeValue()); // not stale
+
+        ResponseEntity<String> hits = restTemplate.getForEntity(getRootUrl() +
+                "/actuator/metrics/cache.gets?tag=cache:vehicles&tag=result:hit", String.class);
+        Assert.assertEquals(200, hits.getStatusCodeValue()); // hit/miss metrics are published
+    }
 
-        Vehicle vehicle = new Vehicle(1949, "Make10", "");
+    @Test
+    @Order(24)
+    public void testCachedVehicleIsNotShared() {
+        // the repository, also with the log store behind /vehicles
+        Vehicle created = vehicleRepository.save(new Vehicle(2015, "SharedMake", "SharedModel"));
+
+        vehicleRepository.findById(created.getId()); // miss, loads the cache
+        Vehicle vehicle = vehicleRepository.findById(created.getId()).get(); // hit
+        vehicle.setModel("NotSaved"); // a change that is never written
+
+        Vehicle again = vehicleRepository.findById(created.getId()).get();
+        Assert.assertNotSame(vehicle, again);
+        Assert.assertEquals("SharedModel", again.getModel());
+    }
 
-        ResponseEntity<Vehicle> created =
-                restTemplate.postForEntity(getRootUrl() + "/vehicles", vehicle, Vehicle.class); // add vehicle
-        ResponseEntity<Vehicle> vehicle2 = restTemplate.exchange(getRootUrl() + "/vehicles/" +
-                created.getBody().getId(), HttpMethod.GET, entity, Vehicle.class);
+    @Test
+    @Order(24)
+    public void testRowLoadedBeforeAWriteIsNotCached() {
+        Vehicle created = vehicleRepository.save(new Vehicle(2015, "RaceMake", "RaceModel"));
+        Vehicle old = vehicleRepository.findById(created.getId()).get();
+        vehicleCache.evict(created.getId());
+
+        // the write commits and evicts while the reader is still loading the old row
+        Vehicle loaded = vehicleCache.get(created.getId(), () -> {
+            vehicleCache.evict(created.getId());
+            return old;
+        });
+        Assert.assertEquals("RaceModel", loaded.getModel()); // the reader itself still gets what it read
+        Assert.assertNull(vehicleCache.get(created.getId())); // but it is not served to anyone else
+    }
 
-        Assert.assertEquals(0, vehicle2.getBody().getYear());
-        Assert.assertNull( vehicle2.getBody().getMake());
-        Assert.assertNull( vehicle2.getBody().getModel());
+    @Test
+    @Order(24)
+    public void testDeleteIgnoresAnOutdatedCachedVehicle() {
+        // the repository's cache is the one /vehicles reads only with the JPA store
+        Assume.assumeTrue(vehicleStore instanceof JpaVehicleStore);
+        Vehicle created = vehicleRepository.save(new Vehicle(2015, "DeleteMake", "DeleteModel"));
+        vehicleRepository.findById(created.getId()); // cached at version 0
+        vehicleRepository.patch(created.getId(), null, null, "DeleteModel2", -1); // no event, stays cached
+
+        String url = getRootUrl() + "/vehicles/" + created.getId();
+        Assert.assertEquals(HttpStatus.ACCEPTED,
+                restTemplate.exchange(url, HttpMethod.DELETE, null, String.class).getStatusCode());
+        Assert.assertEquals(HttpStatus.NOT_FOUND, restTemplate.getForEntity(url, String.class).getStatusCode());
     }
 
+    @Test
+    @Order(25)
+    public void testCachedSearchIsInvalidatedOnWrite() {
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<Object> entity = new HttpEntity<>(null, headers);
+
+        ResponseEntity<List<Vehicle>> list = restTemplate.exchange(getRootUrl() +
+                        "/vehicles?make=SearchMake2,SearchMake1,SearchMake1&yearStart=2015&yearEnd=2020",
+                HttpMethod.GET, entity, new ParameterizedTypeReference<>() {}); // cached empty result
+        Assert.assertEquals(0, list.getBody().size());
+
+        ResponseEntity<Vehicle> created = restTemplate.postForEntity(getRootUrl() +
+                "/vehicles", new Vehicle(2016, "SearchMake1", "SearchModel"), Vehicle.class); // matches the search
+
+        list = restTemplate.exchange(getRootUrl() + "/vehicles?make=SearchMake1,SearchMake2&yearStart=2015&yearEnd=2020",
+                HttpMethod.GET, entity, new ParameterizedTypeReference<>() {}); // same normalized query
+        Assert.assertEquals(1, list.getBody().size());
+
+        Vehicle vehicle = created.getBody();
+        vehicle.setMake("SearchMake3"); // no longer matches
+        restTemplate.exchange(getRootUrl() + "/vehicles", HttpMethod.PUT, new HttpEntity<>(vehicle), Vehicle.class);
+
+        list = restTemplate.exchange(getRootUrl() + "/vehicles?make=SearchMake1,SearchMake2&yearStart=2015&yearEnd=2020",
+                HttpMethod.GET, entity, new ParameterizedTypeReference<>() {});
+        Assert.assertEquals(0, list.getBody().size());
+    }
+
+    @Test
+    @Order(26)
+    public void testMetricsArePublished() {
+        restTemplate.getForEntity(getRootUrl() + "/vehicles?make=Make1", String.class);
+        restTemplate.postForEntity(getRootUrl() + "/vehicles", new Vehicle(1900, "Make10", "Model10"), String.class);
+
+        String prometheus = restTemplate.getForObject(getRootUrl() + "/actuator/prometheus", String.class);
+
+        Assert.assertTrue(prometheus.contains("vehicles_requests_seconds_bucket{exception=\"None\",method=\"GET\",operation=\"search\""));
+        Assert.assertTrue(prometheus.contains("vehicles_validation_rejections_total{reason=\"year_out_of_range\",}"));
+        Assert.assertTrue(prometheus.contains("vehicles_search_rows_count"));
+        Assert.assertTrue(prometheus.contains("vehicles_repository_calls_seconds_count{method=\"findPage\",outcome=\"success\",}"));
+    }
+
+    @Test
+    @Order(27)
+    public void testConditionalRequestsWithETags() {
+        ResponseEntity<Vehicle> created = restTemplate.postForEntity(getRootUrl() +
+                "/vehicles", new Vehicle(2012, "ETagMake", "ETagModel"), Vehicle.class);
+        String url = getRootUrl() + "/vehicles/" + created.getBody().getId();
+
+        ResponseEntity<Vehicle> response = restTemplate.getForEntity(url, Vehicle.class);
+        String eTag = response.getHeaders().getETag();
+        Assert.assertEquals("\"0\"", eTag); // new vehicles start at version 0
+
+        HttpHeaders ifNoneMatch = new HttpHeaders();
+        ifNoneMatch.setIfNoneMatch(eTag);
+        response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(ifNoneMatch), Vehicle.class);
+        Assert.assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode()); // unchanged, no body
+        Assert.assertNull(response.getBody());
+
+        Vehicle vehicle = created.getBody();
+        vehicle.setModel("ETagModel2");
+        HttpHeaders ifMatch = new HttpHeaders();
+        ifMatch.setIfMatch(eTag);
+        response = restTemplate.exchange(url, HttpMethod.PUT, new HttpEntity<>(vehicle, ifMatch), Vehicle.class);
+        Assert.assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        Assert.assertEquals("\"1\"", response.getHeaders().getETag()); // version was bumped
+        Assert.assertEquals("ETagModel2", response.getBody().getModel());
+
+        vehicle.setModel("ETagModel3");
+        response = restTemplate.exchange(url, HttpMethod.PUT, new HttpEntity<>(vehicle, ifMatch), Vehicle.class);
+        Assert.assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode()); // stale ETag
+
+        response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(ifNoneMatch), Vehicle.class);
+        Assert.assertEquals(HttpStatus.ACCEPTED, response.getStatusCode()); // changed since the old ETag
+        Assert.assertEquals("ETagModel2", response.getBody().getModel());
+    }
+
+    @Test
+    @Order(28)
+    public void testPatchVehicle() {
+        ResponseEntity<Vehicle> created = restTemplate.postForEntity(getRootUrl() +
+                "/vehicles", new Vehicle(2013, "PatchMake", "PatchModel"), Vehicle.class);
+        String url = "/vehicles/" + created.getBody().getId();
+        MediaType mergePatch = MediaType.parseMediaType("application/merge-patch+json");
+
+        restTemplate.getForObject(getRootUrl() + "/vehicles?make=PatchMake", Vehicle[].class); // cache the search
+
+        webTestClient.patch().uri(url).contentType(mergePatch).bodyValue("{\"model\": \"PatchModel2\"}")
+                .exchange().expectStatus().isAccepted() // only the model
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+
+        ResponseEntity<Vehicle> vehicle = restTemplate.getForEntity(getRootUrl() + url, Vehicle.class);
+        Assert.assertEquals(2013, vehicle.getBody().getYear()); // not in the patch, unchanged
+        Assert.assertEquals("PatchMake", vehicle.getBody().getMake());
+        Assert.assertEquals("PatchModel2", vehicle.getBody().getModel());
+        Assert.assertEquals("\"1\"", vehicle.getHeaders().getETag());
+
+        Vehicle[] found = restTemplate.getForObject(getRootUrl() + "/vehicles?make=PatchMake", Vehicle[].class);
+        Assert.assertEquals("PatchModel2", found[0].getModel()); // cached search was dropped
+
+        webTestClient.patch().uri(url).contentType(mergePatch).bodyValue("{\"year\": 1949, \"make\": null}")
+                .exchange().expectStatus().isBadRequest(); // invalid year, make cannot be removed
+        webTestClient.patch().uri(url).contentType(mergePatch).bodyValue("{\"id\": 5}")
+                .exchange().expectStatus().isBadRequest(); // not a patchable field
+
+        webTestClient.patch().uri(url).contentType(mergePatch).header(HttpHeaders.IF_MATCH, "\"0\"")
+                .bodyValue("{\"year\": 2014}")
+                .exchange().expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED); // stale ETag
+        webTestClient.patch().uri(url).contentType(mergePatch).header(HttpHeaders.IF_MATCH, "\"1\"")
+                .bodyValue("{\"year\": 2014}")
+                .exchange().expectStatus().isAccepted()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"2\"");
+        Assert.assertEquals(2014, restTemplate.getForObject(getRootUrl() + url, Vehicle.class).getYear());
+
+        webTestClient.patch().uri("/vehicles/999999").contentType(mergePatch).bodyValue("{\"year\": 2014}")
+                .exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    @Order(29)
+    public void testBinaryFormatsAndCompression() throws Exception {
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            vehicles.add(new Vehicle(2000 + i, "WireMake", "WireModel" + i));
+        }
+        restTemplate.postForEntity(getRootUrl() + "/vehicles/batch", vehicles, String.class);
+        String url = getRootUrl() + "/vehicles?make=WireMake";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Collections.singletonList(MediaType.ALL));
+        ResponseEntity<byte[]> response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers),
+                byte[].class);
+        Assert.assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType()); // still the default
+
+        headers.setAccept(Collections.singletonList(MediaType.parseMediaType("application/x-jackson-smile")));
+        response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+        List<Vehicle> smile = new ObjectMapper(new SmileFactory()).readValue(response.getBody(),
+                new TypeReference<List<Vehicle>>() {});
+        Assert.assertEquals(50, smile.size());
+
+        headers.setAccept(Collections.singletonList(MediaType.parseMediaType("application/cbor")));
+        response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+        List<Vehicle> cbor = new ObjectMapper(new CBORFactory()).readValue(response.getBody(),
+                new TypeReference<List<Vehicle>>() {});
+        Assert.assertEquals(smile, cbor);
+
+        headers.setAccept(Collections.singletonList(VehicleProtobufHttpMessageConverter.APPLICATION_PROTOBUF));
+        response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+        Assert.assertEquals(smile, VehicleProtobuf.readList(new ByteArrayInputStream(response.getBody())));
+
+        // a protobuf request body works too
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        VehicleProtobuf.write(new Vehicle(2020, "WireMake2", "WireModel"), body);
+        headers.setContentType(VehicleProtobufHttpMessageConverter.APPLICATION_PROTOBUF);
+        response = restTemplate.exchange(getRootUrl() + "/vehicles", HttpMethod.POST,
+                new HttpEntity<>(body.toByteArray(), headers), byte[].class);
+        Vehicle created = VehicleProtobuf.read(new ByteArrayInputStream(response.getBody()));
+        Assert.assertTrue(created.getId() > 0);
+        Assert.assertEquals("WireMake2", created.getMake());
+
+        // error bodies have no protobuf encoding, they come back as JSON
+        body = new ByteArrayOutputStream();
+        VehicleProtobuf.write(new Vehicle(1949, "WireMake2", "WireModel"), body);
+        response = restTemplate.exchange(getRootUrl() + "/vehicles", HttpMethod.POST,
+                new HttpEntity<>(body.toByteArray(), headers), byte[].class);
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        Assert.assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+
+        headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+        Assert.assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)); // above 2KB
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getBody()))) {
+            Assert.assertEquals(50, new ObjectMapper().readValue(in, Vehicle[].class).length);
+        }
+    }
+
+    @Test
+    @Order(30)
+    public void testSparseFieldsets() {
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            vehicles.add(new Vehicle(2010 + i, "FieldsMake", "FieldsModel" + i));
+        }
+        restTemplate.postForEntity(getRootUrl() + "/vehicles/batch", vehicles, String.class);
+
+        HttpEntity<Object> entity = new HttpEntity<>(null, new HttpHeaders());
+        ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(getRootUrl() +
+                        "/vehicles?make=FieldsMake&yearStart=2011&yearEnd=2013&fields=year",
+                HttpMethod.GET, entity, new ParameterizedTypeReference<>() {});
+        Assert.assertEquals(3, response.getBody().size());
+        for (Map<String, Object> vehicle : response.getBody()) {
+            Assert.assertEquals(new HashSet<>(Arrays.asList("id", "year")), vehicle.keySet()); // id is always there
+        }
+        Assert.assertEquals(2011, response.getBody().get(0).get("year"));
+
+        // paging works the same as without fields
+        response = restTemplate.exchange(getRootUrl() + "/vehicles?make=FieldsMake&fields=make,model&limit=3",
+                HttpMethod.GET, entity, new ParameterizedTypeReference<>() {});
+        Assert.assertEquals(3, response.getBody().size());
+        Assert.assertEquals("FieldsModel0", response.getBody().get(0).get("model"));
+        Assert.assertFalse(response.getBody().get(0).containsKey("year"));
+        String next = response.getHeaders().getFirst(HttpHeaders.LINK);
+        next = next.substring(1, next.indexOf('>'));
+        response = restTemplate.exchange(URI.create(next), HttpMethod.GET, entity,
+                new ParameterizedTypeReference<List<Map<String, Object>>>() {});
+        Assert.assertEquals(2, response.getBody().size());
+        Assert.assertEquals("FieldsModel3", response.getBody().get(0).get("model"));
+
+        ResponseEntity<String> invalid = restTemplate.getForEntity(getRootUrl() + "/vehicles?fields=year,color",
+                String.class);
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, invalid.getStatusCode());
+    }
+
+    @Test
+    @Order(31)
+    public void testVehicleStats() {
+        List<Vehicle> vehicles = new ArrayList<>();
+        int[] years = {1999, 2001, 2003, 2003, 2012};
+        String[] models = {"StatsModel1", "StatsModel1", "StatsModel2", "StatsModel2", "StatsModel3"};
+        for (int i = 0; i < years.length; i++) {
+            vehicles.add(new Vehicle(years[i], "StatsMake", models[i]));
+        }
+        vehicles.add(new Vehicle(2005, "StatsOtherMake", "StatsModel1"));
+        restTemplate.postForEntity(getRootUrl() + "/vehicles/batch", vehicles, String.class);
+
+        ResponseEntity<JsonNode> response = restTemplate.getForEntity(getRootUrl() +
+                "/vehicles/stats?make=StatsMake,StatsOtherMake&yearStart=2000&yearEnd=2020", JsonNode.class);
+        Assert.assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        JsonNode stats = response.getBody();
+        Assert.assertEquals(5, stats.get("total").asInt()); // 1999 is outside the year range
+        Assert.assertEquals(2001, stats.get("minYear").asInt());
+        Assert.assertEquals(2012, stats.get("maxYear").asInt());
+        Assert.assertEquals(4, stats.get("makes").get("StatsMake").asInt());
+        Assert.assertEquals(1, stats.get("makes").get("StatsOtherMake").asInt());
+        Assert.assertEquals(2, stats.get("models").get("StatsModel1").asInt());
+        Assert.assertEquals(2, stats.get("years").get("2003").asInt());
+
+        // decade buckets
+        stats = restTemplate.getForObject(getRootUrl() + "/vehicles/stats?model=StatsModel1,StatsModel2,StatsModel3"
+                + "&yearBucket=10", JsonNode.class);
+        Assert.assertEquals(6, stats.get("total").asInt());
+        List<String> buckets = new ArrayList<>();
+        stats.get("years").fieldNames().forEachRemaining(buckets::add);
+        Assert.assertEquals(Arrays.asList("1990", "2000", "2010"), buckets);
+        Assert.assertEquals(4, stats.get("years").get("2000").asInt());
+
+        // nothing matches
+        stats = restTemplate.getForObject(getRootUrl() + "/vehicles/stats?make=NoSuchMake", JsonNode.class);
+        Assert.assertEquals(0, stats.get("total").asInt());
+        Assert.assertTrue(stats.get("minYear").isNull());
+
+        ResponseEntity<String> invalid = restTemplate.getForEntity(getRootUrl() + "/vehicles/stats?yearBucket=0",
+                String.class);
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, invalid.getStatusCode());
+    }
 }
@@ -0,0 +1,36 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Opaque page token for GET /vehicles, wraps the last vehicle ID of a page
+final class VehicleCursor {
+    private static final String PREFIX = "v1:";
+
+    private VehicleCursor() {
+    }
+
+    static String encode(int lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /* Returns the ID to continue after, 0 when there is no cursor */
+    static int decode(String cursor) {
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (value.startsWith(PREFIX)) {
+                return Integer.parseInt(value.substring(PREFIX.length()));
+            }
+        } catch (IllegalArgumentException e) {
+            // falls through to the error below
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+    }
+}
@@ -0,0 +1,34 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+// JPA callbacks for Vehicle. Sees every write that goes through JPA, including the
+// Spring Data REST endpoints that bypass VehicleController
+@Component
+public class VehicleEntityListener {
+    private final ApplicationEventPublisher publisher;
+
+    public VehicleEntityListener(ApplicationEventPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @PostPersist
+    public void created(Vehicle vehicle) {
+        publisher.publishEvent(new VehicleChangedEvent(VehicleChangedEvent.Type.CREATED, vehicle));
+    }
+
+    @PostUpdate
+    public void updated(Vehicle vehicle) {
+        publisher.publishEvent(new VehicleChangedEvent(VehicleChangedEvent.Type.UPDATED, vehicle));
+    }
+
+    @PostRemove
+    public void deleted(Vehicle vehicle) {
+        publisher.publishEvent(new VehicleChangedEvent(VehicleChangedEvent.Type.DELETED, vehicle));
+    }
+}
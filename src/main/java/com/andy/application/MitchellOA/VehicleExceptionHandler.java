@@ -0,0 +1,45 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
+
+// Error bodies shared by the servlet controllers
+@RestControllerAdvice
+@Profile("!reactive")
+public class VehicleExceptionHandler {
+    private final VehicleViolationLog violationLog;
+
+    public VehicleExceptionHandler(VehicleViolationLog violationLog) {
+        this.violationLog = violationLog;
+    }
+
+    /* 400 listing every rule the vehicle broke, nothing was written */
+    @ExceptionHandler(VehicleValidationException.class)
+    public ResponseEntity<VehicleValidationErrors> handleValidation(
+            VehicleValidationException e, WebRequest request) {
+        violationLog.log(e.getOperation(), e.getViolations());
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.BAD_REQUEST);
+        if (onlyProtobuf(request.getHeader(HttpHeaders.ACCEPT))) {
+            response.contentType(MediaType.APPLICATION_JSON);
+        }
+        return response.body(new VehicleValidationErrors(e.getViolations()));
+    }
+
+    // Protobuf only encodes vehicles. A client that accepts nothing else gets error bodies as JSON, not 406
+    private static boolean onlyProtobuf(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+        return !accepted.isEmpty() && accepted.stream()
+                .allMatch(VehicleProtobufHttpMessageConverter.APPLICATION_PROTOBUF::includes);
+    }
+}
@@ -0,0 +1,51 @@
+package com.andy.application.MitchellOA;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Sparse row for GET /vehicles?fields=..., built from the selected columns only and never a managed entity.
+// The id is always there (it is the paging key), fields that were not selected are left out of the JSON
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class VehicleFields {
+    public static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList("id", "year", "make", "model"));
+
+    private final int id;
+    private Integer year;
+    private String make;
+    private String model;
+
+    public VehicleFields(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Integer getYear() {
+        return year;
+    }
+
+    public void setYear(Integer year) {
+        this.year = year;
+    }
+
+    public String getMake() {
+        return make;
+    }
+
+    public void setMake(String make) {
+        this.make = make;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+}
@@ -0,0 +1,68 @@
+package com.andy.application.MitchellOA;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.rest.webmvc.ResourceNotFoundException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.net.URI;
+import java.util.Set;
+
+// Asynchronous create, enabled with vehicles.ingest.enabled=true
+@RestController
+@Profile("!reactive")
+@ConditionalOnProperty(name = "vehicles.ingest.enabled", havingValue = "true")
+public class VehicleIngestController {
+    private final VehicleIngestQueue vehicleIngestQueue;
+    private final VehicleValidator vehicleValidator;
+
+    public VehicleIngestController(VehicleIngestQueue vehicleIngestQueue, VehicleValidator vehicleValidator) {
+        this.vehicleIngestQueue = vehicleIngestQueue;
+        this.vehicleValidator = vehicleValidator;
+    }
+
+    /* Validate like POST /vehicles and queue the vehicle, it is saved in the background.
+       202 with a tracking id, 400 for an invalid vehicle, 429 when the queue is full */
+    @PostMapping("/vehicles/ingest")
+    @Timed(value = VehicleController.REQUEST_TIMER, extraTags = {"operation", "ingest"}, histogram = true)
+    public ResponseEntity<VehicleIngestStatus> ingestVehicle(@RequestBody Vehicle vehicle) {
+        // reset vehicle ID
+        vehicle.setId(0);
+
+        Set<VehicleViolation> violations = vehicleValidator.validate(vehicle);
+        if (!violations.isEmpty()) {
+            throw new VehicleValidationException("ingest", violations);
+        }
+
+        VehicleIngestStatus status = vehicleIngestQueue.offer(vehicle);
+        if (status == null) {
+            if (!vehicleIngestQueue.isAccepting()) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Shutting down");
+            }
+            // backpressure: the client retries after a short pause
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+
+        URI location = ServletUriComponentsBuilder.fromCurrentRequest()
+                .path("/{trackingId}").buildAndExpand(status.getTrackingId()).toUri();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).location(location).body(status);
+    }
+
+    /* QUEUED, CREATED with the vehicle ID, or FAILED with the reason */
+    @GetMapping("/vehicles/ingest/{trackingId}")
+    @Timed(value = VehicleController.REQUEST_TIMER, extraTags = {"operation", "ingest_status"}, histogram = true)
+    public ResponseEntity<VehicleIngestStatus> getIngestStatus(@PathVariable(value = "trackingId") String trackingId)
+            throws ResourceNotFoundException {
+        VehicleIngestStatus status = vehicleIngestQueue.status(trackingId);
+        if (status == null) {
+            throw new ResourceNotFoundException("Invalid tracking ID");
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(status);
+    }
+}
@@ -0,0 +1,176 @@
+package com.andy.application.MitchellOA;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Write-behind queue for POST /vehicles/ingest. Requests only validate and enqueue, a single consumer thread
+// takes whatever has piled up (at most batch-size vehicles) and saves it through VehicleBatchService in one
+// transaction. On shutdown new vehicles are refused and the queue is drained before the database goes away
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "vehicles.ingest.enabled", havingValue = "true")
+public class VehicleIngestQueue implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(VehicleIngestQueue.class);
+
+    private final VehicleBatchService vehicleBatchService;
+    private final BlockingQueue<Entry> queue;
+    private final int batchSize;
+    private final Duration shutdownTimeout;
+    // outcome per tracking id, kept for a while after the vehicle was saved
+    private final Cache<String, VehicleIngestStatus> statuses;
+
+    private volatile boolean accepting = true;
+    private volatile boolean running;
+    private Thread consumer;
+
+    public VehicleIngestQueue(VehicleBatchService vehicleBatchService,
+                              MeterRegistry meterRegistry,
+                              @Value("${vehicles.ingest.capacity:10000}") int capacity,
+                              @Value("${vehicles.ingest.batch-size:500}") int batchSize,
+                              @Value("${vehicles.ingest.status-ttl:10m}") Duration statusTtl,
+                              @Value("${vehicles.ingest.shutdown-timeout:30s}") Duration shutdownTimeout) {
+        this.vehicleBatchService = vehicleBatchService;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.shutdownTimeout = shutdownTimeout;
+        this.statuses = Caffeine.newBuilder().expireAfterWrite(statusTtl).build();
+        Gauge.builder("vehicles.ingest.queue.size", queue, Collection::size)
+                .description("Vehicles accepted by POST /vehicles/ingest and not saved yet")
+                .register(meterRegistry);
+    }
+
+    /* Queue an already validated vehicle. Returns null when the queue is full or shutting down */
+    public VehicleIngestStatus offer(Vehicle vehicle) {
+        if (!accepting) {
+            return null;
+        }
+        // the status goes in first, the consumer may save the vehicle before offer returns
+        VehicleIngestStatus status = VehicleIngestStatus.queued(UUID.randomUUID().toString());
+        statuses.put(status.getTrackingId(), status);
+        if (!queue.offer(new Entry(status.getTrackingId(), vehicle))) {
+            statuses.invalidate(status.getTrackingId());
+            return null;
+        }
+        return status;
+    }
+
+    /* Status of a queued vehicle, null if the tracking id is unknown or expired */
+    public VehicleIngestStatus status(String trackingId) {
+        return statuses.getIfPresent(trackingId);
+    }
+
+    public boolean isAccepting() {
+        return accepting;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        consumer = new Thread(this::consume, "vehicle-ingest");
+        consumer.start();
+    }
+
+    // Runs after the web server stopped taking requests: refuse new vehicles, then wait for the queue to drain
+    @Override
+    public void stop() {
+        accepting = false;
+        running = false;
+        try {
+            if (consumer != null) {
+                consumer.join(shutdownTimeout.toMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // left over when the drain timed out, or offered while the consumer was exiting
+        List<Entry> unsaved = new ArrayList<>();
+        queue.drainTo(unsaved);
+        for (Entry entry : unsaved) {
+            statuses.put(entry.trackingId,
+                    VehicleIngestStatus.failed(entry.trackingId, "Shut down before it was saved"));
+        }
+        if (!unsaved.isEmpty()) {
+            log.error("{} ingested vehicles were not saved before shutdown", unsaved.size());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Stopped after the web server, which uses the default (highest) phase
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private void consume() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            save(batch);
+            batch.clear();
+        }
+    }
+
+    // One transaction per batch, a failed batch marks all of its vehicles FAILED
+    private void save(List<Entry> batch) {
+        List<Vehicle> vehicles = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            vehicles.add(entry.vehicle);
+        }
+
+        try {
+            List<VehicleBatchResult> results = vehicleBatchService.create(vehicles);
+            for (int i = 0; i < batch.size(); i++) {
+                String trackingId = batch.get(i).trackingId;
+                VehicleBatchResult result = results.get(i);
+                statuses.put(trackingId, result.getStatus() == VehicleBatchResult.Status.CREATED
+                        ? VehicleIngestStatus.created(trackingId, result.getId())
+                        : VehicleIngestStatus.failed(trackingId, String.join(", ", result.getErrors())));
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not save {} ingested vehicles", batch.size(), e);
+            for (Entry entry : batch) {
+                statuses.put(entry.trackingId, VehicleIngestStatus.failed(entry.trackingId, e.getMessage()));
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String trackingId;
+        private final Vehicle vehicle;
+
+        Entry(String trackingId, Vehicle vehicle) {
+            this.trackingId = trackingId;
+            this.vehicle = vehicle;
+        }
+    }
+}
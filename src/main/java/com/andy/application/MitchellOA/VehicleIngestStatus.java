@@ -0,0 +1,47 @@
+package com.andy.application.MitchellOA;
+
+// State of a vehicle sent to POST /vehicles/ingest, looked up by its tracking id
+public class VehicleIngestStatus {
+    public enum Status { QUEUED, CREATED, FAILED }
+
+    private final String trackingId;
+    private final Status status;
+    private final int id;
+    private final String error;
+
+    private VehicleIngestStatus(String trackingId, Status status, int id, String error) {
+        this.trackingId = trackingId;
+        this.status = status;
+        this.id = id;
+        this.error = error;
+    }
+
+    static VehicleIngestStatus queued(String trackingId) {
+        return new VehicleIngestStatus(trackingId, Status.QUEUED, 0, null);
+    }
+
+    static VehicleIngestStatus created(String trackingId, int id) {
+        return new VehicleIngestStatus(trackingId, Status.CREATED, id, null);
+    }
+
+    static VehicleIngestStatus failed(String trackingId, String error) {
+        return new VehicleIngestStatus(trackingId, Status.FAILED, 0, error);
+    }
+
+    public String getTrackingId() {
+        return trackingId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /* ID of the saved vehicle, 0 until it is CREATED */
+    public int getId() {
+        return id;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,88 @@
+package com.andy.application.MitchellOA;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "vehicles.ingest.enabled=true")
+public class VehicleIngestTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private VehicleBatchService vehicleBatchService;
+
+    @Test
+    public void testIngestedVehicleIsSaved() throws InterruptedException {
+        ResponseEntity<VehicleIngestStatus> response = restTemplate.postForEntity("/vehicles/ingest",
+                new Vehicle(2018, "IngestMake", "IngestModel"), VehicleIngestStatus.class);
+        Assert.assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        Assert.assertNotNull(response.getHeaders().getLocation()); // the status endpoint
+
+        // saved in the background, poll the status until it is done
+        VehicleIngestStatus status = response.getBody();
+        for (int i = 0; i < 100 && status.getStatus() == VehicleIngestStatus.Status.QUEUED; i++) {
+            Thread.sleep(50);
+            status = restTemplate.getForObject(response.getHeaders().getLocation(), VehicleIngestStatus.class);
+        }
+        Assert.assertEquals(VehicleIngestStatus.Status.CREATED, status.getStatus());
+
+        Vehicle vehicle = restTemplate.getForObject("/vehicles/" + status.getId(), Vehicle.class);
+        Assert.assertEquals("IngestModel", vehicle.getModel());
+    }
+
+    @Test
+    public void testInvalidVehicleIsRejected() {
+        ResponseEntity<String> response = restTemplate.postForEntity("/vehicles/ingest",
+                new Vehicle(2051, "IngestMake", "IngestModel"), String.class);
+        Assert.assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode()); // never queued
+
+        response = restTemplate.getForEntity("/vehicles/ingest/unknown", String.class);
+        Assert.assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    public void testFullQueueRefusesVehicles() {
+        // not started, nothing takes from the queue
+        VehicleIngestQueue queue = new VehicleIngestQueue(vehicleBatchService, new SimpleMeterRegistry(),
+                2, 10, Duration.ofMinutes(1), Duration.ofSeconds(10));
+
+        Assert.assertNotNull(queue.offer(new Vehicle(2018, "IngestMake", "IngestModel")));
+        Assert.assertNotNull(queue.offer(new Vehicle(2018, "IngestMake", "IngestModel")));
+        Assert.assertNull(queue.offer(new Vehicle(2018, "IngestMake", "IngestModel"))); // 429
+        Assert.assertTrue(queue.isAccepting());
+    }
+
+    @Test
+    public void testStopDrainsQueue() {
+        VehicleIngestQueue queue = new VehicleIngestQueue(vehicleBatchService, new SimpleMeterRegistry(),
+                100, 10, Duration.ofMinutes(1), Duration.ofSeconds(10));
+        List<VehicleIngestStatus> queued = new ArrayList<>();
+        for (int i = 0; i < 35; i++) {
+            queued.add(queue.offer(new Vehicle(2018, "DrainMake", "DrainModel" + i)));
+        }
+
+        queue.start();
+        queue.stop(); // returns once everything queued is saved
+
+        Assert.assertFalse(queue.isAccepting());
+        Assert.assertNull(queue.offer(new Vehicle(2018, "DrainMake", "DrainModel"))); // 503
+        for (VehicleIngestStatus status : queued) {
+            Assert.assertEquals(VehicleIngestStatus.Status.CREATED, queue.status(status.getTrackingId()).getStatus());
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.andy.application.MitchellOA;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append-only segment files behind LogVehicleStore. Each segment is a fixed size memory-mapped file,
+// records are written one after the other and never changed:
+//   int length | int crc32 | byte type | int id | long version | int year | int makeLength | make | int modelLength | model
+// A length of 0 marks the end of a segment. A location is (segment number << 32 | offset), so locations
+// only grow and "durable up to" is a single number. Appends are single threaded (the store's write lock),
+// reads and sync are not
+final class VehicleLog implements Closeable {
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    // highest id handed out so far, so compaction can drop deleted vehicles without their ids coming back
+    static final byte NEXT_ID = 3;
+
+    private static final int HEADER = 8;
+    private static final int FIXED_PAYLOAD = 1 + 4 + 8 + 4 + 4 + 4;
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final NavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private volatile Segment active;
+    // end of the last complete record, and how much of that is known to be on disk
+    private volatile long written;
+    private volatile long durable;
+    private final Object syncLock = new Object();
+
+    interface Visitor {
+        void record(long location, byte type, Vehicle vehicle);
+    }
+
+    VehicleLog(Path directory, int segmentSize, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SUFFIX))
+                    .collect(Collectors.toList())) {
+                Segment segment = new Segment(file);
+                segments.put(segment.number, segment);
+            }
+        }
+        active = segments.isEmpty() ? createSegment(1) : segments.lastEntry().getValue();
+    }
+
+    /* Read every record in write order, once at startup. Finds where each segment ends, a torn record
+       at the end of the last segment (crash during a write) is cut off */
+    void replay(Visitor visitor) {
+        for (Segment segment : segments.values()) {
+            int offset = 0;
+            while (offset + HEADER <= segment.capacity) {
+                int length = segment.buffer.getInt(offset);
+                if (length <= 0 || offset + HEADER + length > segment.capacity || !checksumMatches(segment, offset)) {
+                    break;
+                }
+                Vehicle vehicle = decode(segment, offset);
+                visitor.record(location(segment.number, offset), segment.buffer.get(offset + HEADER), vehicle);
+                offset += HEADER + length;
+            }
+            segment.end = offset;
+            if (segment == active) {
+                // anything after the last good record is garbage, clear it so it can not pass for a record later
+                for (int i = offset; i < segment.capacity && i < offset + HEADER + 65536; i++) {
+                    if (segment.buffer.get(i) != 0) {
+                        segment.buffer.put(i, (byte) 0);
+                    }
+                }
+            }
+        }
+        written = location(active.number, active.end);
+        durable = written;
+    }
+
+    /* Append one record, returns its location */
+    long append(byte type, Vehicle vehicle) {
+        byte[] make = bytes(vehicle.getMake());
+        byte[] model = bytes(vehicle.getModel());
+        int length = FIXED_PAYLOAD + length(make) + length(model);
+        ByteBuffer record = ByteBuffer.allocate(HEADER + length);
+        record.putInt(length).putInt(0)
+                .put(type).putInt(vehicle.getId()).putLong(vehicle.getVersion()).putInt(vehicle.getYear());
+        putBytes(record, make);
+        putBytes(record, model);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER, length);
+        record.putInt(4, (int) crc.getValue());
+        return appendRaw(record.array());
+    }
+
+    /* The bytes of a record as they are, for compaction to copy without holding up appends */
+    byte[] raw(long location) {
+        Segment segment = segment(location);
+        int offset = offset(location);
+        byte[] record = new byte[HEADER + segment.buffer.getInt(offset)];
+        get(segment.buffer, offset, record);
+        return record;
+    }
+
+    /* Append a record read with raw, returns its new location */
+    long copy(byte[] record) {
+        return appendRaw(record);
+    }
+
+    private long appendRaw(byte[] record) {
+        if (record.length + HEADER > segmentSize) {
+            throw new IllegalArgumentException("Record of " + record.length + " bytes does not fit a segment");
+        }
+        Segment segment = active;
+        // keep room for the end marker
+        if (segment.end + record.length + HEADER > segment.capacity) {
+            segment = roll();
+        }
+        int offset = segment.end;
+        // a view for the write, like get below
+        ByteBuffer target = segment.buffer.duplicate();
+        target.position(offset);
+        target.put(record);
+        segment.end = offset + record.length;
+        written = location(segment.number, segment.end);
+        return location(segment.number, offset);
+    }
+
+    // The full segment is forced before the next one takes writes, so sync only ever forces the active one
+    private Segment roll() {
+        Segment full = active;
+        if (fsync) {
+            full.buffer.force();
+        }
+        active = createSegment(full.number + 1);
+        return active;
+    }
+
+    /* Every record of a closed segment in write order. Its records are complete and never change, so this
+       needs no lock */
+    void scan(int number, Visitor visitor) {
+        Segment segment = segments.get(number);
+        if (segment == null) {
+            return;
+        }
+        int offset = 0;
+        while (offset < segment.end) {
+            visitor.record(location(number, offset), segment.buffer.get(offset + HEADER), decode(segment, offset));
+            offset += HEADER + segment.buffer.getInt(offset);
+        }
+    }
+
+    /* Location just after the last appended record */
+    long end() {
+        return written;
+    }
+
+    /* Group commit: block until everything up to location is on disk. Writers that appended while
+       another thread was forcing find their records already covered and return without an fsync of their own */
+    void sync(long location) {
+        if (!fsync || durable >= location) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durable >= location) {
+                return;
+            }
+            long target = written;
+            segment(target).buffer.force();
+            durable = target;
+        }
+    }
+
+    Vehicle read(long location) {
+        return decode(segment(location), offset(location));
+    }
+
+    byte type(long location) {
+        return segment(location).buffer.get(offset(location) + HEADER);
+    }
+
+    int size(long location) {
+        return HEADER + segment(location).buffer.getInt(offset(location));
+    }
+
+    static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    int activeSegment() {
+        return active.number;
+    }
+
+    /* Bytes used by a segment, including records that have been overwritten or deleted since. 0 once the
+       segment is deleted */
+    int used(int segment) {
+        Segment found = segments.get(segment);
+        return found == null ? 0 : found.end;
+    }
+
+    List<Integer> segmentNumbers() {
+        return new ArrayList<>(segments.keySet());
+    }
+
+    /* Remove a segment that no longer holds a live record. Readers that still hold one of its
+       locations keep reading from the mapping, it goes away with the last reference */
+    void delete(int number) throws IOException {
+        Segment segment = segments.remove(number);
+        if (segment != null) {
+            segment.channel.close();
+            Files.deleteIfExists(segment.file);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Segment segment : segments.values()) {
+            if (fsync) {
+                segment.buffer.force();
+            }
+            segment.channel.close();
+        }
+    }
+
+    private Segment segment(long location) {
+        Segment segment = segments.get(segmentOf(location));
+        if (segment == null) {
+            throw new IllegalStateException("Segment " + segmentOf(location) + " was compacted away");
+        }
+        return segment;
+    }
+
+    private Segment createSegment(int number) {
+        try {
+            Segment segment = new Segment(directory.resolve(String.format("%08d%s", number, SUFFIX)));
+            segments.put(number, segment);
+            // make the new file's directory entry durable too
+            if (fsync) {
+                try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+                    dir.force(true);
+                } catch (IOException e) {
+                    // not every platform can open a directory, the file itself is still forced
+                }
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean checksumMatches(Segment segment, int offset) {
+        int length = segment.buffer.getInt(offset);
+        byte[] payload = new byte[length];
+        get(segment.buffer, offset + HEADER, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == segment.buffer.getInt(offset + 4);
+    }
+
+    private static Vehicle decode(Segment segment, int offset) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = offset + HEADER + 1;
+        Vehicle vehicle = new Vehicle();
+        vehicle.setId(buffer.getInt(position));
+        vehicle.setVersion(buffer.getLong(position + 4));
+        vehicle.setYear(buffer.getInt(position + 12));
+        position += 16;
+        int makeLength = buffer.getInt(position);
+        vehicle.setMake(string(buffer, position + 4, makeLength));
+        position += 4 + Math.max(makeLength, 0);
+        vehicle.setModel(string(buffer, position + 4, buffer.getInt(position)));
+        return vehicle;
+    }
+
+    // -1 stands for null
+    private static String string(MappedByteBuffer buffer, int position, int length) {
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        get(buffer, position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Absolute bulk read, ByteBuffer.get(int, byte[]) needs Java 13. The view keeps the shared buffer's position alone
+    private static void get(ByteBuffer buffer, int position, byte[] bytes) {
+        ByteBuffer source = buffer.duplicate();
+        source.position(position);
+        source.get(bytes);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void putBytes(ByteBuffer record, byte[] bytes) {
+        if (bytes == null) {
+            record.putInt(-1);
+        } else {
+            record.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    static long location(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    private final class Segment {
+        private final int number;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        // written by the appending thread only
+        private volatile int end;
+
+        Segment(Path file) throws IOException {
+            this.file = file;
+            String name = file.getFileName().toString();
+            this.number = Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+            // a segment written with a bigger segment-size keeps its size
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                if (raf.length() < segmentSize) {
+                    raf.setLength(segmentSize);
+                }
+                this.capacity = (int) raf.length();
+            }
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.andy.application.MitchellOA;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Protobuf encoding of Vehicle and VehicleList from resources/proto/vehicle.proto.
+// Written against the wire format directly: the schema has four scalar fields,
+// and generated message classes would be copied into a Vehicle entity anyway
+final class VehicleProtobuf {
+    private static final int ID = 1;
+    private static final int YEAR = 2;
+    private static final int MAKE = 3;
+    private static final int MODEL = 4;
+    private static final int VEHICLES = 1; // VehicleList.vehicles
+
+    private VehicleProtobuf() {
+    }
+
+    static void write(Vehicle vehicle, OutputStream out) throws IOException {
+        CodedOutputStream output = CodedOutputStream.newInstance(out);
+        writeFields(vehicle, output);
+        output.flush();
+    }
+
+    static void writeList(List<Vehicle> vehicles, OutputStream out) throws IOException {
+        CodedOutputStream output = CodedOutputStream.newInstance(out);
+        for (Vehicle vehicle : vehicles) {
+            output.writeTag(VEHICLES, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(size(vehicle));
+            writeFields(vehicle, output);
+        }
+        output.flush();
+    }
+
+    static Vehicle read(InputStream in) throws IOException {
+        return readFields(CodedInputStream.newInstance(in));
+    }
+
+    static List<Vehicle> readList(InputStream in) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(in);
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+            if (WireFormat.getTagFieldNumber(tag) == VEHICLES
+                    && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                int limit = input.pushLimit(input.readRawVarint32());
+                vehicles.add(readFields(input));
+                input.popLimit(limit);
+            } else {
+                input.skipField(tag);
+            }
+        }
+        return vehicles;
+    }
+
+    // proto3 leaves out fields that have the default value
+    private static void writeFields(Vehicle vehicle, CodedOutputStream output) throws IOException {
+        if (vehicle.getId() != 0) {
+            output.writeInt32(ID, vehicle.getId());
+        }
+        if (vehicle.getYear() != 0) {
+            output.writeInt32(YEAR, vehicle.getYear());
+        }
+        if (vehicle.getMake() != null && !vehicle.getMake().isEmpty()) {
+            output.writeString(MAKE, vehicle.getMake());
+        }
+        if (vehicle.getModel() != null && !vehicle.getModel().isEmpty()) {
+            output.writeString(MODEL, vehicle.getModel());
+        }
+    }
+
+    private static int size(Vehicle vehicle) {
+        int size = 0;
+        if (vehicle.getId() != 0) {
+            size += CodedOutputStream.computeInt32Size(ID, vehicle.getId());
+        }
+        if (vehicle.getYear() != 0) {
+            size += CodedOutputStream.computeInt32Size(YEAR, vehicle.getYear());
+        }
+        if (vehicle.getMake() != null && !vehicle.getMake().isEmpty()) {
+            size += CodedOutputStream.computeStringSize(MAKE, vehicle.getMake());
+        }
+        if (vehicle.getModel() != null && !vehicle.getModel().isEmpty()) {
+            size += CodedOutputStream.computeStringSize(MODEL, vehicle.getModel());
+        }
+        return size;
+    }
+
+    // Reads until the end of the input or of the current limit, unknown fields are skipped
+    private static Vehicle readFields(CodedInputStream input) throws IOException {
+        Vehicle vehicle = new Vehicle();
+        for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case ID:
+                    vehicle.setId(input.readInt32());
+                    break;
+                case YEAR:
+                    vehicle.setYear(input.readInt32());
+                    break;
+                case MAKE:
+                    vehicle.setMake(input.readString());
+                    break;
+                case MODEL:
+                    vehicle.setModel(input.readString());
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+        }
+        return vehicle;
+    }
+}
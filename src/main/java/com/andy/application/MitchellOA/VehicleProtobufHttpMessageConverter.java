@@ -0,0 +1,72 @@
+package com.andy.application.MitchellOA;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+// application/x-protobuf bodies for Vehicle and List<Vehicle>, encoded by VehicleProtobuf
+class VehicleProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+    static final MediaType APPLICATION_PROTOBUF = new MediaType("application", "x-protobuf");
+
+    VehicleProtobufHttpMessageConverter() {
+        super(APPLICATION_PROTOBUF);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Vehicle.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return (isVehicle(type) || isVehicleList(type)) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return (supports(clazz) || (List.class.isAssignableFrom(clazz) && isVehicleList(type))) && canWrite(mediaType);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        try {
+            return isVehicleList(type) ? VehicleProtobuf.readList(inputMessage.getBody())
+                    : VehicleProtobuf.read(inputMessage.getBody());
+        } catch (InvalidProtocolBufferException e) {
+            throw new HttpMessageNotReadableException("Invalid protobuf body: " + e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(Object body, Type type, HttpOutputMessage outputMessage) throws IOException {
+        if (body instanceof Vehicle) {
+            VehicleProtobuf.write((Vehicle) body, outputMessage.getBody());
+        } else {
+            VehicleProtobuf.writeList((List<Vehicle>) body, outputMessage.getBody());
+        }
+    }
+
+    private static boolean isVehicle(Type type) {
+        return type instanceof Class && Vehicle.class.isAssignableFrom((Class<?>) type);
+    }
+
+    private static boolean isVehicleList(Type type) {
+        ResolvableType resolved = ResolvableType.forType(type);
+        return List.class.isAssignableFrom(resolved.toClass())
+                && Vehicle.class.isAssignableFrom(resolved.getGeneric(0).toClass());
+    }
+}
@@ -0,0 +1,129 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.Predicate;
+
+import java.util.*;
+
+// Search criteria for GET /vehicles
+public class VehicleQuery {
+    private final Integer yearStart;
+    private final Integer yearEnd;
+    private final List<String> makes;
+    private final List<String> models;
+
+    private VehicleQuery(Integer yearStart, Integer yearEnd, List<String> makes, List<String> models) {
+        this.yearStart = yearStart;
+        this.yearEnd = yearEnd;
+        this.makes = makes;
+        this.models = models;
+    }
+
+    /* Build a query from the raw request parameters of GET /vehicles */
+    public static VehicleQuery of(Integer yearStart, Integer yearEnd, String make, String model) {
+        // Year range is only applied when both ends are given and in order
+        if (yearStart == null || yearEnd == null || yearStart > yearEnd) {
+            yearStart = null;
+            yearEnd = null;
+        }
+        return new VehicleQuery(yearStart, yearEnd, split(make), split(model));
+    }
+
+    // Comma separated values become a sorted IN list without duplicates, null means no filter.
+    // Sorting does not change the result but makes equal queries equal keys
+    private static List<String> split(String values) {
+        if (values == null) {
+            return null;
+        }
+        return Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(Arrays.asList(values.split(",")))));
+    }
+
+    public Integer getYearStart() {
+        return yearStart;
+    }
+
+    public Integer getYearEnd() {
+        return yearEnd;
+    }
+
+    public List<String> getMakes() {
+        return makes;
+    }
+
+    public List<String> getModels() {
+        return models;
+    }
+
+    public boolean hasYearRange() {
+        return yearStart != null;
+    }
+
+    /* True if no filter was given at all */
+    public boolean isEmpty() {
+        return !hasYearRange() && makes == null && models == null;
+    }
+
+    /* Check a single vehicle against the query, same rules as the SQL predicate */
+    public boolean matches(Vehicle vehicle) {
+        if (hasYearRange() && (vehicle.getYear() < yearStart || vehicle.getYear() > yearEnd)) {
+            return false;
+        }
+        if (makes != null && !makes.contains(vehicle.getMake())) {
+            return false;
+        }
+        return models == null || models.contains(vehicle.getModel());
+    }
+
+    /* Like matches for a vehicle of which only some fields are known, a null field is assumed to match */
+    public boolean mayMatch(Integer year, String make, String model) {
+        if (hasYearRange() && year != null && (year < yearStart || year > yearEnd)) {
+            return false;
+        }
+        if (makes != null && make != null && !makes.contains(make)) {
+            return false;
+        }
+        return models == null || model == null || models.contains(model);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof VehicleQuery)) {
+            return false;
+        }
+        VehicleQuery other = (VehicleQuery) o;
+        return Objects.equals(yearStart, other.yearStart) && Objects.equals(yearEnd, other.yearEnd)
+                && Objects.equals(makes, other.makes) && Objects.equals(models, other.models);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(yearStart, yearEnd, makes, models);
+    }
+
+    @Override
+    public String toString() {
+        return "VehicleQuery{yearStart=" + yearStart + ", yearEnd=" + yearEnd
+                + ", makes=" + makes + ", models=" + models + "}";
+    }
+
+    /* Turn the query into a single JPA predicate: year BETWEEN and make/model IN lists */
+    public Specification<Vehicle> toSpecification() {
+        return (root, criteriaQuery, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (hasYearRange()) {
+                predicates.add(cb.between(root.get("year"), yearStart, yearEnd));
+            }
+            if (makes != null) {
+                predicates.add(root.get("make").in(makes));
+            }
+            if (models != null) {
+                predicates.add(root.get("model").in(models));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+}
@@ -0,0 +1,130 @@
+package com.andy.application.MitchellOA;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Per client token bucket on /vehicles. The client is the API key header if it is one of vehicles.ratelimit.api-keys,
+// else the remote address: an unknown key must not buy a fresh bucket, or a client could send a new one every time.
+// Every request takes tokens from the client's bucket: a lookup by id (and a single vehicle write) takes lookup-cost,
+// an open-ended read (search, export, stats) or a batch write takes search-cost. An empty bucket answers 429 with
+// Retry-After. Paths are matched below the context path
+@Component
+@Profile("!reactive")
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@ConditionalOnProperty(name = "vehicles.ratelimit.enabled", havingValue = "true")
+public class VehicleRateLimitFilter extends OncePerRequestFilter {
+    private static final Pattern LOOKUP = Pattern.compile("/vehicles/\\d+");
+    private static final String BATCH = "/vehicles/batch";
+
+    private final String clientHeader;
+    private final Set<String> apiKeys;
+    private final long capacity;
+    private final double refillPerSecond;
+    private final long lookupCost;
+    private final long searchCost;
+    // an empty bucket is full again after this long
+    private final long refillNanos;
+    // idle clients are dropped, a new bucket starts full so that loses nothing
+    private final Cache<String, TokenBucket> buckets;
+    private final Counter lookupsRejected;
+    private final Counter searchesRejected;
+
+    public VehicleRateLimitFilter(MeterRegistry meterRegistry,
+                                  @Value("${vehicles.ratelimit.client-header:X-API-Key}") String clientHeader,
+                                  @Value("${vehicles.ratelimit.api-keys:}") String[] apiKeys,
+                                  @Value("${vehicles.ratelimit.capacity:200}") long capacity,
+                                  @Value("${vehicles.ratelimit.refill-per-second:100}") double refillPerSecond,
+                                  @Value("${vehicles.ratelimit.lookup-cost:1}") long lookupCost,
+                                  @Value("${vehicles.ratelimit.search-cost:10}") long searchCost,
+                                  @Value("${vehicles.ratelimit.max-clients:100000}") long maxClients) {
+        this.clientHeader = clientHeader;
+        this.apiKeys = Arrays.stream(apiKeys).map(String::trim).filter(key -> !key.isEmpty())
+                .collect(Collectors.toSet());
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.lookupCost = lookupCost;
+        this.searchCost = searchCost;
+        this.refillNanos = (long) (capacity / refillPerSecond * 1e9);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofNanos(refillNanos))
+                .build();
+        this.lookupsRejected = rejected(meterRegistry, "lookup");
+        this.searchesRejected = rejected(meterRegistry, "search");
+        Gauge.builder("vehicles.ratelimit.clients", buckets, Cache::estimatedSize)
+                .description("Clients with a rate limit bucket")
+                .register(meterRegistry);
+    }
+
+    private static Counter rejected(MeterRegistry meterRegistry, String requestClass) {
+        return Counter.builder("vehicles.ratelimit.rejected")
+                .description("Requests answered 429 by the /vehicles rate limiter")
+                .tag("class", requestClass)
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getServletPath().startsWith("/vehicles");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean search = isSearch(request);
+        long now = System.nanoTime();
+        TokenBucket bucket = buckets.get(client(request), key -> new TokenBucket(capacity, refillPerSecond, now));
+
+        long wait = bucket.tryConsume(search ? searchCost : lookupCost, now);
+        if (wait == 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        (search ? searchesRejected : lookupsRejected).increment();
+        // a cost above the capacity can never be paid, Retry-After is then the time to a full bucket
+        long retryAfter = TimeUnit.NANOSECONDS.toSeconds(Math.min(wait, refillNanos) + 999_999_999);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter)));
+        response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Rate limit exceeded");
+    }
+
+    // GET /vehicles/{id} is a primary key lookup, every other GET can scan a range of rows. A batch writes up to
+    // vehicles.batch.max-size rows, its items are not known before the body is read
+    private static boolean isSearch(HttpServletRequest request) {
+        String path = request.getServletPath();
+        if (path.equals(BATCH)) {
+            return true;
+        }
+        return HttpMethod.GET.matches(request.getMethod()) && !LOOKUP.matcher(path).matches();
+    }
+
+    private String client(HttpServletRequest request) {
+        String apiKey = request.getHeader(clientHeader);
+        return apiKey != null && apiKeys.contains(apiKey) ? "key:" + apiKey : "ip:" + request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,131 @@
+package com.andy.application.MitchellOA;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"vehicles.ratelimit.enabled=true", "vehicles.ratelimit.capacity=20",
+                "vehicles.ratelimit.refill-per-second=0.1", "vehicles.ratelimit.search-cost=10",
+                "vehicles.ratelimit.api-keys=searcher,reader,other,counted,batcher",
+                "vehicles.shedding.enabled=true"})
+public class VehicleRateLimitTest {
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private ResponseEntity<String> get(String url, String apiKey) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("X-API-Key", apiKey);
+        return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    }
+
+    // A request to path below a context path
+    private static MockHttpServletRequest request(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api" + path);
+        request.setContextPath("/api");
+        request.setServletPath(path);
+        return request;
+    }
+
+    @Test
+    public void testSearchesCostMoreThanLookups() {
+        restTemplate.postForEntity("/vehicles", new Vehicle(2010, "LimitMake", "LimitModel"), String.class);
+
+        // 20 tokens: two searches, then the bucket is empty
+        Assert.assertEquals(HttpStatus.ACCEPTED, get("/vehicles?make=LimitMake", "searcher").getStatusCode());
+        Assert.assertEquals(HttpStatus.ACCEPTED, get("/vehicles?make=LimitMake", "searcher").getStatusCode());
+        ResponseEntity<String> limited = get("/vehicles?make=LimitMake", "searcher");
+        Assert.assertEquals(HttpStatus.TOO_MANY_REQUESTS, limited.getStatusCode());
+        Assert.assertTrue(Integer.parseInt(limited.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)) > 0);
+
+        // the same 20 tokens pay for 20 lookups
+        for (int i = 0; i < 20; i++) {
+            Assert.assertNotEquals(HttpStatus.TOO_MANY_REQUESTS, get("/vehicles/1", "reader").getStatusCode());
+        }
+        Assert.assertEquals(HttpStatus.TOO_MANY_REQUESTS, get("/vehicles/1", "reader").getStatusCode());
+
+        // other clients have their own bucket, paths outside /vehicles are not limited
+        Assert.assertEquals(HttpStatus.ACCEPTED, get("/vehicles?make=LimitMake", "other").getStatusCode());
+        Assert.assertEquals(HttpStatus.OK, get("/actuator/health", "searcher").getStatusCode());
+    }
+
+    @Test
+    public void testBatchesCostLikeSearches() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("X-API-Key", "batcher");
+        HttpEntity<List<Vehicle>> batch = new HttpEntity<>(List.of(new Vehicle(2010, "LimitMake", "BatchModel")),
+                headers);
+
+        // 20 tokens: two batches, whatever their size
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(HttpStatus.ACCEPTED,
+                    restTemplate.exchange("/vehicles/batch", HttpMethod.POST, batch, String.class).getStatusCode());
+        }
+        Assert.assertEquals(HttpStatus.TOO_MANY_REQUESTS,
+                restTemplate.exchange("/vehicles/batch", HttpMethod.PUT, batch, String.class).getStatusCode());
+    }
+
+    @Test
+    public void testUnknownKeysShareTheAddressBucket() {
+        // a new made-up key per request does not get a new bucket, they all use the one of the address
+        int accepted = 0;
+        for (int i = 0; i < 25; i++) {
+            if (get("/vehicles/1", "random-" + i).getStatusCode() != HttpStatus.TOO_MANY_REQUESTS) {
+                accepted++;
+            }
+        }
+        Assert.assertTrue(accepted <= 20); // the bucket holds 20, less if the address already used some
+    }
+
+    @Test
+    public void testRejectionsAreCounted() {
+        for (int i = 0; i < 3; i++) {
+            get("/vehicles/stats", "counted");
+        }
+        // the third stats call found the bucket empty
+        JsonNode metric = restTemplate.getForObject("/actuator/metrics/vehicles.ratelimit.rejected?tag=class:search",
+                JsonNode.class);
+        Assert.assertTrue(metric.get("measurements").get(0).get("value").asDouble() >= 1);
+    }
+
+    @Test
+    public void testShedsLoadWhenConnectionsArePending() throws Exception {
+        AtomicInteger pending = new AtomicInteger();
+        DatabaseLoadSheddingFilter filter = new DatabaseLoadSheddingFilter(pending::get, new SimpleMeterRegistry(), 5);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        pending.set(4);
+        filter.doFilter(request("/vehicles"), response, new MockFilterChain());
+        Assert.assertEquals(200, response.getStatus());
+
+        response = new MockHttpServletResponse();
+        pending.set(5);
+        filter.doFilter(request("/vehicles"), response, new MockFilterChain());
+        Assert.assertEquals(503, response.getStatus());
+        Assert.assertEquals("1", response.getHeader(HttpHeaders.RETRY_AFTER));
+
+        // only /vehicles is shed
+        response = new MockHttpServletResponse();
+        filter.doFilter(request("/actuator/health"), response, new MockFilterChain());
+        Assert.assertEquals(200, response.getStatus());
+    }
+}
@@ -0,0 +1,26 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Queries that Spring Data can not derive on its own
+interface VehicleRepositoryCustom {
+
+    /* Keyset page: vehicles matching spec with id > afterId, in id order, at most limit rows */
+    List<Vehicle> findPage(Specification<Vehicle> spec, int afterId, int limit);
+
+    /* Same keyset page, reading only the id and the given columns (names from VehicleFields.NAMES).
+       Rows come back as VehicleFields, no entity is created */
+    List<VehicleFields> findPageFields(Specification<Vehicle> spec, Set<String> fields, int afterId, int limit);
+
+    /* Facet counts for the vehicles matching query, years grouped in buckets of yearBucket years.
+       One GROUP BY make, model, year query, which the (make, model, year) index answers on its own */
+    VehicleStats findStats(VehicleQuery query, int yearBucket);
+
+    /* Forward-only cursor over the vehicles matching spec, in id order. Rows are detached as they
+       are read so the persistence context stays empty. Must be consumed inside a transaction and closed */
+    Stream<Vehicle> streamAll(Specification<Vehicle> spec, int fetchSize);
+}
@@ -0,0 +1,108 @@
+package com.andy.application.MitchellOA;
+
+import org.hibernate.jpa.QueryHints;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Criteria implementation of VehicleRepositoryCustom, picked up by Spring Data
+class VehicleRepositoryCustomImpl implements VehicleRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Vehicle> findPage(Specification<Vehicle> spec, int afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Vehicle> query = cb.createQuery(Vehicle.class);
+        Root<Vehicle> root = query.from(Vehicle.class);
+
+        // WHERE <filters> AND id > afterId ORDER BY id, so every page is an index range scan
+        query.where(cb.and(spec.toPredicate(root, query, cb), cb.greaterThan(root.get("id"), afterId)))
+                .orderBy(cb.asc(root.get("id")));
+
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public List<VehicleFields> findPageFields(Specification<Vehicle> spec, Set<String> fields, int afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Vehicle> root = query.from(Vehicle.class);
+
+        // SELECT id, <fields> instead of the whole row
+        List<Selection<?>> columns = new ArrayList<>();
+        columns.add(root.get("id").alias("id"));
+        for (String field : fields) {
+            if (!field.equals("id")) {
+                columns.add(root.get(field).alias(field));
+            }
+        }
+        query.multiselect(columns)
+                .where(cb.and(spec.toPredicate(root, query, cb), cb.greaterThan(root.get("id"), afterId)))
+                .orderBy(cb.asc(root.get("id")));
+
+        List<VehicleFields> page = new ArrayList<>();
+        for (Tuple tuple : entityManager.createQuery(query).setMaxResults(limit).getResultList()) {
+            VehicleFields row = new VehicleFields(tuple.get("id", Integer.class));
+            if (fields.contains("year")) {
+                row.setYear(tuple.get("year", Integer.class));
+            }
+            if (fields.contains("make")) {
+                row.setMake(tuple.get("make", String.class));
+            }
+            if (fields.contains("model")) {
+                row.setModel(tuple.get("model", String.class));
+            }
+            page.add(row);
+        }
+        return page;
+    }
+
+    @Override
+    public VehicleStats findStats(VehicleQuery query, int yearBucket) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> groups = cb.createTupleQuery();
+        Root<Vehicle> root = groups.from(Vehicle.class);
+
+        // SELECT make, model, year, COUNT(*) ... GROUP BY make, model, year, every facet is a sum over these rows
+        groups.multiselect(root.get("make").alias("make"), root.get("model").alias("model"),
+                root.get("year").alias("year"), cb.count(root).alias("count"))
+                .where(query.toSpecification().toPredicate(root, groups, cb))
+                .groupBy(root.get("make"), root.get("model"), root.get("year"));
+
+        VehicleStats stats = new VehicleStats();
+        for (Tuple tuple : entityManager.createQuery(groups).getResultList()) {
+            stats.add(tuple.get("make", String.class), tuple.get("model", String.class),
+                    tuple.get("year", Integer.class), tuple.get("count", Long.class), yearBucket);
+        }
+        return stats;
+    }
+
+    @Override
+    public Stream<Vehicle> streamAll(Specification<Vehicle> spec, int fetchSize) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Vehicle> query = cb.createQuery(Vehicle.class);
+        Root<Vehicle> root = query.from(Vehicle.class);
+        query.where(spec.toPredicate(root, query, cb)).orderBy(cb.asc(root.get("id")));
+
+        return entityManager.createQuery(query)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()
+                .map(vehicle -> {
+                    entityManager.detach(vehicle);
+                    return vehicle;
+                });
+    }
+}
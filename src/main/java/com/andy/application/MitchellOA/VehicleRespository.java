@@ -1,9 +1,57 @@
 package com.andy.application.MitchellOA;
 
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.QueryHint;
+import java.util.Optional;
 
 @RepositoryRestResource
-interface VehicleRepository extends JpaRepository<Vehicle, Integer> {
+interface VehicleRepository extends JpaRepository<Vehicle, Integer>, JpaSpecificationExecutor<Vehicle>,
+        VehicleRepositoryCustom {
+
+    /* Read-through cache for lookups by ID, entries are evicted by VehicleCacheInvalidator.
+       Every caller gets its own copy and a missing vehicle is not cached, see DetachedVehicleCache */
+    @Override
+    @Cacheable(cacheResolver = CacheConfig.VEHICLES_RESOLVER, sync = true)
+    Optional<Vehicle> findById(Integer id);
+
+    /* Paged listing behind the Spring Data REST collection resource, the page query goes through
+       Hibernate's query cache. Spring Data does not pass hints on to the count query, that one still runs */
+    @Override
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"))
+    Page<Vehicle> findAll(Pageable pageable);
+
+    /* Short-lived cache for GET /vehicles/stats, entries expire after vehicles.stats.cache.ttl and are
+       not evicted on writes, so counts can be that much behind */
+    @Override
+    @Cacheable(cacheNames = CacheConfig.VEHICLE_STATS)
+    VehicleStats findStats(VehicleQuery query, int yearBucket);
+
+    /* One UPDATE for PATCH /vehicles/{id}, a null value leaves the column as it is.
+       A negative expectedVersion updates any version. Entity listeners do not see bulk updates,
+       the caller publishes the VehicleChangedEvent. Returns the number of rows updated, 0 or 1 */
+    @Modifying
+    @Transactional
+    @RestResource(exported = false)
+    @Query("UPDATE Vehicle v SET v.year = COALESCE(:year, v.year), v.make = COALESCE(:make, v.make), "
+            + "v.model = COALESCE(:model, v.model), v.version = v.version + 1 "
+            + "WHERE v.id = :id AND (v.version = :expectedVersion OR :expectedVersion < 0)")
+    int patch(@Param("id") int id, @Param("year") Integer year, @Param("make") String make,
+              @Param("model") String model, @Param("expectedVersion") long expectedVersion);
 
-}
\ No newline at end of file
+    /* Version after patch, read in the same transaction: the UPDATE holds the row until it commits */
+    @RestResource(exported = false)
+    @Query("SELECT v.version FROM Vehicle v WHERE v.id = :id")
+    long findVersionById(@Param("id") int id);
+}
@@ -0,0 +1,109 @@
+package com.andy.application.MitchellOA;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Result cache for GET /vehicles, keyed on the normalized query and page.
+// A write only drops the searches it can affect: the ones that returned the vehicle,
+// and the ones whose filters match the vehicle's new year/make/model
+@Component
+public class VehicleSearchCache {
+    private final Cache<Object, Object> searches;
+    private final boolean enabled;
+
+    // bumped on every write before its searches are dropped, a search that raced with a write is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    public VehicleSearchCache(CacheManager cacheManager,
+                              @Value("${vehicles.search.cache.enabled:true}") boolean enabled) {
+        this.searches = ((CaffeineCache) cacheManager.getCache(CacheConfig.VEHICLE_SEARCHES)).getNativeCache();
+        this.enabled = enabled;
+    }
+
+    /* Return the cached page for the query, or load it from the database and cache it */
+    public List<Vehicle> get(VehicleQuery query, int afterId, int limit, Supplier<List<Vehicle>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        Key key = new Key(query, afterId, limit);
+        Result cached = (Result) searches.getIfPresent(key);
+        if (cached != null) {
+            return cached.vehicles;
+        }
+
+        long startGeneration = generation.get();
+        Result result = new Result(loader.get());
+        if (generation.get() == startGeneration) {
+            searches.put(key, result);
+            // a write between the check and the put may have missed this entry, it bumped the generation first
+            if (generation.get() != startGeneration) {
+                searches.asMap().remove(key, result);
+            }
+        }
+        return result.vehicles;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION, fallbackExecution = true)
+    public void onVehicleChanged(VehicleChangedEvent event) {
+        generation.incrementAndGet();
+
+        // a patch leaves some fields unknown, those are taken to match
+        boolean deleted = event.getType() == VehicleChangedEvent.Type.DELETED;
+        searches.asMap().entrySet().removeIf(entry -> ((Result) entry.getValue()).ids.contains(event.getId())
+                || (!deleted && ((Key) entry.getKey()).query.mayMatch(event.getYear(), event.getMake(),
+                event.getModel())));
+    }
+
+    /* Cost of a cached page for the cache's weight limit */
+    static int weigh(Object key, Object value) {
+        return ((Result) value).vehicles.size() + 1;
+    }
+
+    private static final class Key {
+        private final VehicleQuery query;
+        private final int afterId;
+        private final int limit;
+
+        Key(VehicleQuery query, int afterId, int limit) {
+            this.query = query;
+            this.afterId = afterId;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return afterId == other.afterId && limit == other.limit && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, afterId, limit);
+        }
+    }
+
+    private static final class Result {
+        private final List<Vehicle> vehicles;
+        private final Set<Integer> ids = new HashSet<>();
+
+        Result(List<Vehicle> vehicles) {
+            this.vehicles = Collections.unmodifiableList(vehicles);
+            for (Vehicle vehicle : vehicles) {
+                ids.add(vehicle.getId());
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.andy.application.MitchellOA;
+
+import java.util.List;
+
+// Answers GET /vehicles searches, picked with vehicles.search.engine
+public interface VehicleSearchEngine {
+
+    /* Vehicles matching the query with id > afterId, in id order, at most limit rows */
+    List<Vehicle> findPage(VehicleQuery query, int afterId, int limit);
+}
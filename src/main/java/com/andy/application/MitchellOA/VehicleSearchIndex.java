@@ -0,0 +1,202 @@
+package com.andy.application.MitchellOA;
+
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory inverted index for read heavy workloads (vehicles.search.engine=index).
+// Make and model are dictionary encoded, every make, model and year has a bitmap of vehicle IDs,
+// and a search is a few bitmap ORs and ANDs instead of a table scan.
+// Loaded from the store at startup and kept current from VehicleChangedEvent
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "vehicles.search.engine", havingValue = "index")
+public class VehicleSearchIndex implements VehicleSearchEngine, SmartInitializingSingleton {
+    private final VehicleStore vehicleStore;
+
+    private final Map<String, Integer> makeCodes = new HashMap<>();
+    private final Map<String, Integer> modelCodes = new HashMap<>();
+    private final List<RoaringBitmap> makes = new ArrayList<>();
+    private final List<RoaringBitmap> models = new ArrayList<>();
+    private final TreeMap<Integer, RoaringBitmap> years = new TreeMap<>();
+    private final RoaringBitmap all = new RoaringBitmap();
+    // IDs of deleted vehicles, later events for them are stale
+    private final RoaringBitmap deleted = new RoaringBitmap();
+
+    // stored copies, handed out as new objects so callers can not change the index
+    private final Map<Integer, Vehicle> vehicles = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public VehicleSearchIndex(VehicleStore vehicleStore) {
+        this.vehicleStore = vehicleStore;
+    }
+
+    /* Load every vehicle before the web server starts taking requests */
+    @Override
+    public void afterSingletonsInstantiated() {
+        lock.writeLock().lock();
+        try {
+            vehicleStore.scan(VehicleQuery.of(null, null, null, null), this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Vehicle> findPage(VehicleQuery query, int afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap matches = match(query);
+            List<Vehicle> page = new ArrayList<>(Math.min(limit, matches.getCardinality()));
+
+            PeekableIntIterator ids = matches.getIntIterator();
+            ids.advanceIfNeeded(afterId + 1);
+            while (ids.hasNext() && page.size() < limit) {
+                page.add(copy(vehicles.get(ids.next())));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Only committed changes are applied, the listener waits while the initial load runs.
+    // Stale events (see VehicleChangedEvent) are skipped
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onVehicleChanged(VehicleChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (deleted.contains(event.getId())) {
+                return;
+            }
+            Vehicle previous = vehicles.get(event.getId());
+            if (event.getType() != VehicleChangedEvent.Type.DELETED
+                    && previous != null && event.getVersion() < previous.getVersion()) {
+                return;
+            }
+            switch (event.getType()) {
+                case DELETED:
+                    deleted.add(event.getId());
+                    if (previous != null) {
+                        remove(previous);
+                    }
+                    break;
+                case PATCHED:
+                    // The patch only has the fields it changed. On top of the version right before it that is the
+                    // whole row, otherwise an earlier write (maybe the CREATED) is still on its way and the row
+                    // is read back instead. That read may already be newer, its later events are then stale
+                    Vehicle patched = previous != null && previous.getVersion() >= event.getVersion() - 1
+                            ? patch(previous, event)
+                            : vehicleStore.findAllById(List.of(event.getId())).stream().findFirst().orElse(null);
+                    if (patched != null) {
+                        if (previous != null) {
+                            remove(previous);
+                        }
+                        add(patched);
+                    }
+                    break;
+                default:
+                    if (previous != null) {
+                        remove(previous);
+                    }
+                    Vehicle vehicle = new Vehicle(event.getYear(), event.getMake(), event.getModel());
+                    vehicle.setId(event.getId());
+                    vehicle.setVersion(event.getVersion());
+                    add(vehicle);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Bitmap of the IDs matching every filter of the query
+    private RoaringBitmap match(VehicleQuery query) {
+        RoaringBitmap result;
+        if (query.hasYearRange()) {
+            result = RoaringBitmap.or(years.subMap(query.getYearStart(), true, query.getYearEnd(), true)
+                    .values().iterator());
+        } else {
+            result = all.clone();
+        }
+        if (query.getMakes() != null) {
+            result.and(union(query.getMakes(), makeCodes, makes));
+        }
+        if (query.getModels() != null) {
+            result.and(union(query.getModels(), modelCodes, models));
+        }
+        return result;
+    }
+
+    private static RoaringBitmap union(List<String> values, Map<String, Integer> codes, List<RoaringBitmap> bitmaps) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (String value : values) {
+            Integer code = codes.get(value);
+            if (code != null) {
+                result.or(bitmaps.get(code));
+            }
+        }
+        return result;
+    }
+
+    private void add(Vehicle vehicle) {
+        int id = vehicle.getId();
+        vehicles.put(id, copy(vehicle));
+        all.add(id);
+        years.computeIfAbsent(vehicle.getYear(), year -> new RoaringBitmap()).add(id);
+        bitmap(vehicle.getMake(), makeCodes, makes).add(id);
+        bitmap(vehicle.getModel(), modelCodes, models).add(id);
+    }
+
+    private void remove(Vehicle vehicle) {
+        int id = vehicle.getId();
+        vehicles.remove(id);
+        all.remove(id);
+        years.get(vehicle.getYear()).remove(id);
+        bitmap(vehicle.getMake(), makeCodes, makes).remove(id);
+        bitmap(vehicle.getModel(), modelCodes, models).remove(id);
+    }
+
+    // Bitmap for a make or model, a new value gets the next dictionary code
+    private static RoaringBitmap bitmap(String value, Map<String, Integer> codes, List<RoaringBitmap> bitmaps) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = bitmaps.size();
+            codes.put(value, code);
+            bitmaps.add(new RoaringBitmap());
+        }
+        return bitmaps.get(code);
+    }
+
+    // A patch only carries the fields it changed, the rest comes from the indexed row
+    private static Vehicle patch(Vehicle previous, VehicleChangedEvent event) {
+        Vehicle vehicle = copy(previous);
+        if (event.getYear() != null) {
+            vehicle.setYear(event.getYear());
+        }
+        if (event.getMake() != null) {
+            vehicle.setMake(event.getMake());
+        }
+        if (event.getModel() != null) {
+            vehicle.setModel(event.getModel());
+        }
+        vehicle.setVersion(event.getVersion());
+        return vehicle;
+    }
+
+    private static Vehicle copy(Vehicle vehicle) {
+        Vehicle copy = new Vehicle(vehicle.getYear(), vehicle.getMake(), vehicle.getModel());
+        copy.setId(vehicle.getId());
+        copy.setVersion(vehicle.getVersion());
+        return copy;
+    }
+}
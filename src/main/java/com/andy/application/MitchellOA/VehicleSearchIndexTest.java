@@ -0,0 +1,173 @@
+package com.andy.application.MitchellOA;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.*;
+
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, properties = "vehicles.search.engine=index")
+public class VehicleSearchIndexTest {
+    private static final String[] MAKES = {"Toyota", "Honda", "Kia", "Ford", "Tesla", "Mazda"};
+    private static final String[] MODELS = {"Camry", "Civic", "Sorrento", "Focus", "Model3", "Miata", "Accord"};
+
+    @Autowired
+    private VehicleSearchEngine vehicleSearchEngine;
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final Random random = new Random(7);
+
+    // Runs before every @Test method
+    @Before
+    public void beforeEach() {
+        vehicleRepository.deleteAll();
+
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            vehicles.add(randomVehicle());
+        }
+        vehicleRepository.saveAll(vehicles);
+    }
+
+    @Test
+    public void testIndexIsTheConfiguredEngine() {
+        Assert.assertTrue(vehicleSearchEngine instanceof VehicleSearchIndex);
+    }
+
+    @Test
+    public void testSearchMatchesDatabase() {
+        assertSameResults();
+    }
+
+    @Test
+    public void testSearchMatchesDatabaseAfterWrites() {
+        List<Vehicle> vehicles = vehicleRepository.findAll();
+
+        // update, delete and create through the repository, the index follows the events
+        for (int i = 0; i < 50; i++) {
+            Vehicle vehicle = vehicles.get(i);
+            Vehicle changed = randomVehicle();
+            vehicle.setYear(changed.getYear());
+            vehicle.setMake(changed.getMake());
+            vehicle.setModel(changed.getModel());
+            vehicleRepository.save(vehicle);
+        }
+        vehicleRepository.deleteAll(vehicles.subList(50, 100));
+        vehicleRepository.saveAll(Arrays.asList(randomVehicle(), randomVehicle(), randomVehicle()));
+
+        assertSameResults();
+    }
+
+    @Test
+    public void testStaleEventsAreIgnored() {
+        Vehicle vehicle = vehicleRepository.findAll().get(0);
+        VehicleQuery query = VehicleQuery.of(null, null, "StaleMake", null);
+
+        // two commits on the same vehicle that reach the listeners in the other order
+        eventPublisher.publishEvent(changed(VehicleChangedEvent.Type.UPDATED, vehicle, "Newer", 2));
+        eventPublisher.publishEvent(changed(VehicleChangedEvent.Type.UPDATED, vehicle, "Older", 1));
+        List<Vehicle> found = vehicleSearchEngine.findPage(query, 0, 10);
+        Assert.assertEquals(1, found.size());
+        Assert.assertEquals("Newer", found.get(0).getModel());
+
+        // an update that commits before the delete but arrives after it
+        eventPublisher.publishEvent(changed(VehicleChangedEvent.Type.DELETED, vehicle, "Newer", 2));
+        eventPublisher.publishEvent(changed(VehicleChangedEvent.Type.UPDATED, vehicle, "Late", 2));
+        Assert.assertTrue(vehicleSearchEngine.findPage(query, 0, 10).isEmpty());
+    }
+
+    @Test
+    public void testPatchesAreOrderedByVersion() {
+        Vehicle vehicle = vehicleRepository.findAll().get(0);
+        VehicleQuery query = VehicleQuery.of(null, null, "StaleMake", null);
+
+        // a patch that committed before a newer update but arrives after it
+        eventPublisher.publishEvent(changed(VehicleChangedEvent.Type.UPDATED, vehicle, "Newer", 2));
+        eventPublisher.publishEvent(VehicleChangedEvent.patched(vehicle.getId(), null, null, "Older",
+                vehicle.getVersion() + 1));
+        Assert.assertEquals("Newer", vehicleSearchEngine.findPage(query, 0, 10).get(0).getModel());
+
+        // two patches in the database, the second one's event arrives first: the row is read back
+        Vehicle other = vehicleRepository.findAll().get(1);
+        vehicleRepository.patch(other.getId(), null, "GapMake", null, -1);
+        vehicleRepository.patch(other.getId(), null, null, "GapModel", -1);
+        eventPublisher.publishEvent(VehicleChangedEvent.patched(other.getId(), null, null, "GapModel",
+                other.getVersion() + 2));
+        eventPublisher.publishEvent(VehicleChangedEvent.patched(other.getId(), null, "GapMake", null,
+                other.getVersion() + 1));
+        List<Vehicle> found = vehicleSearchEngine.findPage(VehicleQuery.of(null, null, "GapMake", null), 0, 10);
+        Assert.assertEquals(1, found.size());
+        Assert.assertEquals("GapModel", found.get(0).getModel());
+    }
+
+    private static VehicleChangedEvent changed(VehicleChangedEvent.Type type, Vehicle vehicle, String model,
+                                               long versionsLater) {
+        Vehicle changed = new Vehicle(vehicle.getYear(), "StaleMake", model);
+        changed.setId(vehicle.getId());
+        changed.setVersion(vehicle.getVersion() + versionsLater);
+        return new VehicleChangedEvent(type, changed);
+    }
+
+    @Test
+    public void testSearchMatchesDatabaseAfterPatches() {
+        List<Vehicle> vehicles = vehicleRepository.findAll();
+
+        // single UPDATE statements, the index only gets the patched fields from the event
+        for (int i = 0; i < 50; i++) {
+            Vehicle changed = randomVehicle();
+            Integer year = i % 3 == 0 ? changed.getYear() : null;
+            String make = i % 3 == 1 ? changed.getMake() : null;
+            String model = i % 2 == 0 ? changed.getModel() : null;
+            int id = vehicles.get(i).getId();
+            Assert.assertEquals(1, vehicleRepository.patch(id, year, make, model, -1));
+            eventPublisher.publishEvent(VehicleChangedEvent.patched(id, year, make, model,
+                    vehicleRepository.findVersionById(id)));
+        }
+
+        assertSameResults();
+    }
+
+    // Random searches, full and paged, must return the same rows from the index and from SQL
+    private void assertSameResults() {
+        for (int i = 0; i < 200; i++) {
+            Integer yearStart = random.nextBoolean() ? 1950 + random.nextInt(101) : null;
+            Integer yearEnd = random.nextBoolean() ? 1950 + random.nextInt(101) : null;
+            VehicleQuery query = VehicleQuery.of(yearStart, yearEnd, randomList(MAKES), randomList(MODELS));
+            int afterId = random.nextBoolean() ? 0 : random.nextInt(600);
+            int limit = random.nextBoolean() ? 10000 : 1 + random.nextInt(20);
+
+            Assert.assertEquals(query.toString(),
+                    vehicleRepository.findPage(query.toSpecification(), afterId, limit),
+                    vehicleSearchEngine.findPage(query, afterId, limit));
+        }
+    }
+
+    private Vehicle randomVehicle() {
+        return new Vehicle(1950 + random.nextInt(101), MAKES[random.nextInt(MAKES.length)],
+                MODELS[random.nextInt(MODELS.length)]);
+    }
+
+    // null (no filter) or a comma separated list, sometimes with a value no vehicle has
+    private String randomList(String[] values) {
+        if (random.nextInt(3) == 0) {
+            return null;
+        }
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i <= random.nextInt(3); i++) {
+            list.add(random.nextInt(10) == 0 ? "Unknown" : values[random.nextInt(values.length)]);
+        }
+        return String.join(",", list);
+    }
+}
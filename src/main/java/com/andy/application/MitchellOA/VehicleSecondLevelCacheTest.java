@@ -0,0 +1,94 @@
+package com.andy.application.MitchellOA;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class VehicleSecondLevelCacheTest {
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private Statistics statistics;
+
+    @Before
+    public void beforeEach() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    // every EntityManager has its own first-level cache, only the second-level cache is shared
+    private Vehicle find(int id) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return entityManager.find(Vehicle.class, id);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    @Test
+    public void testEntityLoadsComeFromTheCache() {
+        Vehicle saved = vehicleRepository.save(new Vehicle(2015, "CachedMake", "CachedModel"));
+        statistics.clear();
+
+        Assert.assertEquals("CachedModel", find(saved.getId()).getModel());
+        Assert.assertEquals("CachedModel", find(saved.getId()).getModel());
+        Assert.assertEquals(0, statistics.getEntityLoadCount()); // cached on insert, H2 was not read
+        Assert.assertEquals(2, statistics.getSecondLevelCacheHitCount());
+
+        // an update through Hibernate replaces the cached entry
+        saved.setModel("CachedModel2");
+        vehicleRepository.save(saved);
+        Assert.assertEquals("CachedModel2", find(saved.getId()).getModel());
+
+        // a bulk update drops it
+        vehicleRepository.patch(saved.getId(), null, null, "CachedModel3", -1);
+        Assert.assertEquals("CachedModel3", find(saved.getId()).getModel());
+    }
+
+    @Test
+    public void testFindAllUsesTheQueryCache() {
+        vehicleRepository.save(new Vehicle(2016, "QueryMake", "QueryModel"));
+        statistics.clear();
+
+        long total = vehicleRepository.findAll(PageRequest.of(0, 1)).getTotalElements();
+        vehicleRepository.findAll(PageRequest.of(0, 1));
+        Assert.assertEquals(1, statistics.getQueryCacheHitCount()); // the page, its count is not cached
+        Assert.assertEquals(1, statistics.getQueryCachePutCount());
+
+        // a write to the table makes the cached page stale
+        vehicleRepository.save(new Vehicle(2017, "QueryMake", "QueryModel"));
+        Assert.assertEquals(total + 1, vehicleRepository.findAll(PageRequest.of(0, 1)).getTotalElements());
+        Assert.assertEquals(1, statistics.getQueryCacheHitCount());
+        Assert.assertEquals(2, statistics.getQueryCachePutCount());
+    }
+
+    @Test
+    public void testStatisticsAreExposed() {
+        find(1);
+        JsonNode metric = restTemplate.getForObject("/actuator/metrics/hibernate.second.level.cache.requests",
+                JsonNode.class);
+        Assert.assertEquals("hibernate.second.level.cache.requests", metric.get("name").asText());
+    }
+}
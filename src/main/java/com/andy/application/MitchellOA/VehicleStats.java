@@ -0,0 +1,51 @@
+package com.andy.application.MitchellOA;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Facet counts for GET /vehicles/stats: vehicles per make, per model and per year bucket, plus the year range.
+// Built once from grouped rows and shared through the stats cache, so it is never modified afterwards
+public class VehicleStats {
+    private long total;
+    private Integer minYear;
+    private Integer maxYear;
+    private final Map<String, Long> makes = new TreeMap<>();
+    private final Map<String, Long> models = new TreeMap<>();
+    // keyed on the first year of each bucket
+    private final Map<Integer, Long> years = new TreeMap<>();
+
+    /* Add a group of count vehicles with the same make, model and year */
+    void add(String make, String model, int year, long count, int yearBucket) {
+        total += count;
+        minYear = minYear == null ? year : Math.min(minYear, year);
+        maxYear = maxYear == null ? year : Math.max(maxYear, year);
+        makes.merge(String.valueOf(make), count, Long::sum);
+        models.merge(String.valueOf(model), count, Long::sum);
+        years.merge(Math.floorDiv(year, yearBucket) * yearBucket, count, Long::sum);
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public Integer getMinYear() {
+        return minYear;
+    }
+
+    public Integer getMaxYear() {
+        return maxYear;
+    }
+
+    public Map<String, Long> getMakes() {
+        return Collections.unmodifiableMap(makes);
+    }
+
+    public Map<String, Long> getModels() {
+        return Collections.unmodifiableMap(models);
+    }
+
+    public Map<Integer, Long> getYears() {
+        return Collections.unmodifiableMap(years);
+    }
+}
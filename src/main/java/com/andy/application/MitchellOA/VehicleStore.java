@@ -0,0 +1,55 @@
+package com.andy.application.MitchellOA;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Where vehicles are kept, picked with vehicles.store: jpa (H2 through VehicleRepository) or log
+// (embedded log-structured files). Every write publishes a VehicleChangedEvent, and a write that loses
+// against a concurrent one throws ObjectOptimisticLockingFailureException
+public interface VehicleStore {
+
+    Optional<Vehicle> findById(int id);
+
+    boolean existsById(int id);
+
+    /* The vehicles that exist among ids, in no particular order */
+    List<Vehicle> findAllById(Collection<Integer> ids);
+
+    /* Vehicles matching the query with id > afterId, in id order, at most limit rows */
+    List<Vehicle> findPage(VehicleQuery query, int afterId, int limit);
+
+    /* Same page with only the id and the given fields (names from VehicleFields.NAMES) */
+    List<VehicleFields> findPageFields(VehicleQuery query, Set<String> fields, int afterId, int limit);
+
+    /* Facet counts for the vehicles matching query, years grouped in buckets of yearBucket years */
+    VehicleStats findStats(VehicleQuery query, int yearBucket);
+
+    /* Hand every matching vehicle to action in id order, without holding them all in memory */
+    void scan(VehicleQuery query, Consumer<Vehicle> action);
+
+    /* Save new vehicles, ids and versions are assigned on the given objects */
+    void insertAll(List<Vehicle> vehicles);
+
+    /* Save changes to existing vehicles, each only if its version is still the stored one.
+       Either all of them are saved or, on a version conflict, none */
+    List<Vehicle> updateAll(List<Vehicle> vehicles);
+
+    /* Set the non-null fields of a vehicle if its version is expectedVersion (any version if negative).
+       Returns the new version, empty if there is no such vehicle or the version did not match */
+    OptionalLong patch(int id, Integer year, String make, String model, long expectedVersion);
+
+    /* Returns false if there is no such vehicle */
+    boolean deleteById(int id);
+
+    default void insert(Vehicle vehicle) {
+        insertAll(List.of(vehicle));
+    }
+
+    default Vehicle update(Vehicle vehicle) {
+        return updateAll(List.of(vehicle)).get(0);
+    }
+}
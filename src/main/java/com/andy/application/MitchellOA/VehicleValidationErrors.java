@@ -0,0 +1,57 @@
+package com.andy.application.MitchellOA;
+
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 400 body for a vehicle that breaks validation rules, every broken rule is listed
+public class VehicleValidationErrors {
+    private final int status = HttpStatus.BAD_REQUEST.value();
+    private final String error = HttpStatus.BAD_REQUEST.getReasonPhrase();
+    private final List<Violation> violations = new ArrayList<>();
+
+    public VehicleValidationErrors(Iterable<VehicleViolation> violations) {
+        for (VehicleViolation violation : violations) {
+            this.violations.add(new Violation(violation));
+        }
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public List<Violation> getViolations() {
+        return violations;
+    }
+
+    public static class Violation {
+        private final String rule;
+        private final String field;
+        private final String message;
+
+        Violation(VehicleViolation violation) {
+            this.rule = violation.name();
+            this.field = violation.getField().toLowerCase();
+            this.message = violation.getMessage();
+        }
+
+        /* Name of the rule, e.g. YEAR_OUT_OF_RANGE */
+        public String getRule() {
+            return rule;
+        }
+
+        /* JSON field that broke it: year, make or model */
+        public String getField() {
+            return field;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
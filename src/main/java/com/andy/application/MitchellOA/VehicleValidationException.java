@@ -0,0 +1,25 @@
+package com.andy.application.MitchellOA;
+
+import java.util.Set;
+
+// A write was refused because the vehicle breaks validation rules, answered with 400 and VehicleValidationErrors
+public class VehicleValidationException extends RuntimeException {
+    private final String operation;
+    private final Set<VehicleViolation> violations;
+
+    public VehicleValidationException(String operation, Set<VehicleViolation> violations) {
+        // no stack trace, this is an answer to the client and not a bug
+        super(null, null, false, false);
+        this.operation = operation;
+        this.violations = violations;
+    }
+
+    /* The endpoint that refused the vehicle, e.g. create */
+    public String getOperation() {
+        return operation;
+    }
+
+    public Set<VehicleViolation> getViolations() {
+        return violations;
+    }
+}
@@ -0,0 +1,86 @@
+package com.andy.application.MitchellOA;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+// Year/make/model rules shared by every endpoint that writes vehicles
+@Component
+public class VehicleValidator {
+    public static final int YEAR_START = 1950;
+    public static final int YEAR_END = 2050;
+
+    private final Map<VehicleViolation, Counter> rejections = new EnumMap<>(VehicleViolation.class);
+
+    public VehicleValidator(MeterRegistry meterRegistry) {
+        // one counter per rule, e.g. vehicles.validation.rejections{reason="year_out_of_range"}
+        for (VehicleViolation violation : VehicleViolation.values()) {
+            rejections.put(violation, Counter.builder("vehicles.validation.rejections")
+                    .description("Vehicles or fields rejected by a validation rule")
+                    .tag("reason", violation.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    /* Returns every rule the vehicle breaks, empty if it is valid */
+    public Set<VehicleViolation> validate(Vehicle vehicle) {
+        Set<VehicleViolation> violations = EnumSet.noneOf(VehicleViolation.class);
+
+        // Make sure vehicle year is within range of YEAR_START and YEAR_END
+        if (!isValidYear(vehicle.getYear())) {
+            violations.add(VehicleViolation.YEAR_OUT_OF_RANGE);
+        }
+
+        // Make sure vehicle make is not null and has a valid make
+        if (!isValidName(vehicle.getMake())) {
+            violations.add(VehicleViolation.INVALID_MAKE);
+        }
+
+        // Make sure vehicle model is not null and has a valid model
+        if (!isValidName(vehicle.getModel())) {
+            violations.add(VehicleViolation.INVALID_MODEL);
+        }
+
+        for (VehicleViolation violation : violations) {
+            rejections.get(violation).increment();
+        }
+        return violations;
+    }
+
+    /* Rules for a JSON merge patch: only the fields it contains are checked,
+       and removing a field (null) breaks that field's rule */
+    public Set<VehicleViolation> validatePatch(Map<String, ?> patch) {
+        Set<VehicleViolation> violations = EnumSet.noneOf(VehicleViolation.class);
+
+        Object year = patch.get("year");
+        if (patch.containsKey("year") && !(year instanceof Integer && isValidYear((Integer) year))) {
+            violations.add(VehicleViolation.YEAR_OUT_OF_RANGE);
+        }
+        Object make = patch.get("make");
+        if (patch.containsKey("make") && !(make instanceof String && isValidName((String) make))) {
+            violations.add(VehicleViolation.INVALID_MAKE);
+        }
+        Object model = patch.get("model");
+        if (patch.containsKey("model") && !(model instanceof String && isValidName((String) model))) {
+            violations.add(VehicleViolation.INVALID_MODEL);
+        }
+
+        for (VehicleViolation violation : violations) {
+            rejections.get(violation).increment();
+        }
+        return violations;
+    }
+
+    public boolean isValidYear(int year) {
+        return year >= YEAR_START && year <= YEAR_END;
+    }
+
+    public boolean isValidName(String name) {
+        return name != null && name.length() != 0;
+    }
+}
@@ -0,0 +1,24 @@
+package com.andy.application.MitchellOA;
+
+// Validation rules a vehicle can break
+public enum VehicleViolation {
+    YEAR_OUT_OF_RANGE("Year", "Vehicle year not within range"),
+    INVALID_MAKE("Make", "Make was not valid"),
+    INVALID_MODEL("Model", "Model was not valid");
+
+    private final String field;
+    private final String message;
+
+    VehicleViolation(String field, String message) {
+        this.field = field;
+        this.message = message;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,77 @@
+package com.andy.application.MitchellOA;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Log lines for refused vehicles, capped per rule so a client sending the same bad vehicle in a loop
+// does not flood the log. Each rule logs its first max-per-interval violations every interval, then one
+// in sample-rate (0 for none). The next line that is written says how many were left out.
+// Dropped violations only bump counters, no message is built for them. The lines go through the async
+// appender in logback-spring.xml, so the request thread never waits on the console
+@Component
+public class VehicleViolationLog {
+    private static final Logger log = LoggerFactory.getLogger(VehicleViolationLog.class);
+
+    private final int maxPerInterval;
+    private final long intervalNanos;
+    private final int sampleRate;
+    private final Map<VehicleViolation, Window> windows = new EnumMap<>(VehicleViolation.class);
+
+    public VehicleViolationLog(@Value("${vehicles.validation.log.max-per-interval:10}") int maxPerInterval,
+                               @Value("${vehicles.validation.log.interval:10s}") Duration interval,
+                               @Value("${vehicles.validation.log.sample-rate:100}") int sampleRate) {
+        this.maxPerInterval = maxPerInterval;
+        this.intervalNanos = interval.toNanos();
+        this.sampleRate = sampleRate;
+        for (VehicleViolation violation : VehicleViolation.values()) {
+            windows.put(violation, new Window());
+        }
+    }
+
+    /* Log each rule the vehicle broke, unless that rule is over its cap */
+    public void log(String operation, Iterable<VehicleViolation> violations) {
+        if (!log.isWarnEnabled()) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (VehicleViolation violation : violations) {
+            Window window = windows.get(violation);
+            long suppressed = window.admit(now);
+            if (suppressed == 0) {
+                log.warn("Rejected {}: {} ({})", operation, violation.getMessage(), violation.name());
+            } else if (suppressed > 0) {
+                log.warn("Rejected {}: {} ({}), {} more not logged", operation, violation.getMessage(),
+                        violation.name(), suppressed);
+            }
+        }
+    }
+
+    // Violations of one rule in the current interval
+    private final class Window {
+        private final AtomicLong start = new AtomicLong(System.nanoTime());
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicLong suppressed = new AtomicLong();
+
+        // -1 to drop the line, else the number dropped since the last line that was written
+        long admit(long now) {
+            long started = start.get();
+            if (now - started >= intervalNanos && start.compareAndSet(started, now)) {
+                count.set(0);
+            }
+            int n = count.incrementAndGet();
+            if (n <= maxPerInterval || sampleRate > 0 && (n - maxPerInterval) % sampleRate == 0) {
+                return suppressed.getAndSet(0);
+            }
+            suppressed.incrementAndGet();
+            return -1;
+        }
+    }
+}
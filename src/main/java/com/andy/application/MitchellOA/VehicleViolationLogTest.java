@@ -0,0 +1,64 @@
+package com.andy.application.MitchellOA;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Set;
+
+
+// VehicleViolationLog on its own, the log lines are captured by a list appender
+public class VehicleViolationLogTest {
+    private final Logger logger = (Logger) LoggerFactory.getLogger(VehicleViolationLog.class);
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    @Before
+    public void beforeEach() {
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @After
+    public void afterEach() {
+        logger.detachAppender(appender);
+    }
+
+    @Test
+    public void testRepeatedViolationsAreCappedAndSampled() {
+        VehicleViolationLog violationLog = new VehicleViolationLog(3, Duration.ofHours(1), 10);
+        for (int i = 0; i < 23; i++) {
+            violationLog.log("create", Set.of(VehicleViolation.INVALID_MAKE));
+        }
+
+        // 3 under the cap, then the 10th and 20th past it
+        Assert.assertEquals(5, appender.list.size());
+        Assert.assertEquals("Rejected create: Make was not valid (INVALID_MAKE)",
+                appender.list.get(0).getFormattedMessage());
+        Assert.assertEquals("Rejected create: Make was not valid (INVALID_MAKE), 9 more not logged",
+                appender.list.get(3).getFormattedMessage());
+
+        // every rule has its own cap
+        violationLog.log("update", Set.of(VehicleViolation.INVALID_MODEL));
+        Assert.assertEquals(6, appender.list.size());
+    }
+
+    @Test
+    public void testCapResetsEveryInterval() throws InterruptedException {
+        VehicleViolationLog violationLog = new VehicleViolationLog(1, Duration.ofMillis(100), 0);
+        violationLog.log("create", Set.of(VehicleViolation.YEAR_OUT_OF_RANGE));
+        violationLog.log("create", Set.of(VehicleViolation.YEAR_OUT_OF_RANGE));
+        violationLog.log("create", Set.of(VehicleViolation.YEAR_OUT_OF_RANGE));
+        Assert.assertEquals(1, appender.list.size()); // sampling is off
+
+        Thread.sleep(150);
+        violationLog.log("create", Set.of(VehicleViolation.YEAR_OUT_OF_RANGE));
+        Assert.assertEquals(2, appender.list.size());
+        Assert.assertTrue(appender.list.get(1).getFormattedMessage().endsWith("2 more not logged"));
+    }
+}
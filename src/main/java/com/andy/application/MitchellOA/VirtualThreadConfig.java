@@ -0,0 +1,53 @@
+package com.andy.application.MitchellOA;
+
+import org.apache.coyote.AbstractProtocol;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Opt-in mode, vehicles.threads.virtual=true, that runs every request on its own virtual thread.
+// Needs a JDK with Executors.newVirtualThreadPerTaskExecutor (21+) at runtime. The code is built for an
+// older release, Spring 5.2 cannot read newer class files, so the factory method is looked up by reflection.
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty(name = "vehicles.threads.virtual", havingValue = "true")
+public class VirtualThreadConfig {
+
+    /* One virtual thread per task, shared by Tomcat and Spring MVC async requests (NDJSON export) */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("vehicles.threads.virtual=true needs Java 21 or newer, running on "
+                    + System.getProperty("java.version"), e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create the virtual thread executor", e);
+        }
+    }
+
+    // Spring MVC picks up the async executor by this bean name
+    @Bean
+    public AsyncTaskExecutor applicationTaskExecutor(ExecutorService virtualThreadExecutor) {
+        return new TaskExecutorAdapter(virtualThreadExecutor);
+    }
+
+    /* Replace Tomcat's worker pool, so the Hikari pool is the only limit on concurrent requests */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<AbstractProtocol<?>> virtualThreadProtocolHandlerCustomizer(
+            ExecutorService virtualThreadExecutor,
+            @Value("${vehicles.threads.virtual.max-connections:20000}") int maxConnections) {
+        return protocolHandler -> {
+            protocolHandler.setExecutor(virtualThreadExecutor);
+            protocolHandler.setMaxConnections(maxConnections);
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package com.andy.application.MitchellOA;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "vehicles.threads.virtual=true")
+public class VirtualThreadModeTest {
+    @Autowired
+    private ServletWebServerApplicationContext context;
+
+    @Autowired
+    private ExecutorService virtualThreadExecutor;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    // Virtual threads need a Java 21 runtime, skip on older JDKs
+    @BeforeClass
+    public static void requireVirtualThreads() {
+        Assume.assumeTrue(Runtime.version().feature() >= 21);
+    }
+
+    @Test
+    public void testTomcatRunsOnVirtualThreads() throws Exception {
+        TomcatWebServer webServer = (TomcatWebServer) context.getWebServer();
+        Assert.assertSame(virtualThreadExecutor,
+                webServer.getTomcat().getConnector().getProtocolHandler().getExecutor());
+
+        Future<Object> isVirtual = virtualThreadExecutor.submit(
+                () -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+        Assert.assertEquals(Boolean.TRUE, isVirtual.get());
+    }
+
+    @Test
+    public void testRequestsAreServed() {
+        Vehicle vehicle = restTemplate.postForObject("/vehicles", new Vehicle(2015, "Subaru", "Outback"), Vehicle.class);
+
+        ResponseEntity<Vehicle> response = restTemplate.getForEntity("/vehicles/" + vehicle.getId(), Vehicle.class);
+        Assert.assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        Assert.assertEquals("Outback", response.getBody().getModel());
+    }
+}
@@ -0,0 +1,40 @@
+package com.andy.application.MitchellOA;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+// Binary bodies picked by the Accept (or Content-Type) header, JSON stays the default:
+// application/x-jackson-smile, application/cbor and application/x-protobuf.
+// Responses are also gzip compressed when the client accepts it, see server.compression.*
+@Configuration
+@Profile("!reactive")
+public class WireFormatConfig implements WebMvcConfigurer {
+
+    // These beans replace Spring MVC's default Smile and CBOR converters, and keep their place after JSON.
+    // The builder is a prototype carrying the spring.jackson.* settings of the JSON mapper
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    // Added last, so a client that accepts anything still gets JSON
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new VehicleProtobufHttpMessageConverter());
+    }
+}
@@ -0,0 +1,15 @@
+-- Vehicle table, previously generated by Hibernate ddl-auto
+CREATE SEQUENCE vehicle_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE vehicle (
+    id    INTEGER      NOT NULL,
+    year  INTEGER      NOT NULL,
+    make  VARCHAR(255),
+    model VARCHAR(255),
+    CONSTRAINT pk_vehicle PRIMARY KEY (id)
+);
+
+-- GET /vehicles filters: make (+ model) (+ year range), model (+ year range), year range alone
+CREATE INDEX idx_vehicle_make_model_year ON vehicle (make, model, year);
+CREATE INDEX idx_vehicle_model_year ON vehicle (model, year);
+CREATE INDEX idx_vehicle_year ON vehicle (year);
@@ -0,0 +1,2 @@
+-- Optimistic locking: every update checks and bumps the version, existing rows start at 0
+ALTER TABLE vehicle ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,15 @@
+-- Change data capture outbox: one row per vehicle insert, update or delete, written in the same transaction.
+-- Consumers read it in seq order through GET /vehicles/changes, rows older than the retention are deleted
+CREATE TABLE vehicle_change (
+    seq        BIGINT AUTO_INCREMENT NOT NULL,
+    type       VARCHAR(16)  NOT NULL,
+    vehicle_id INTEGER      NOT NULL,
+    year       INTEGER,
+    make       VARCHAR(255),
+    model      VARCHAR(255),
+    version    BIGINT,
+    changed_at TIMESTAMP    NOT NULL,
+    CONSTRAINT pk_vehicle_change PRIMARY KEY (seq)
+);
+
+CREATE INDEX idx_vehicle_change_changed_at ON vehicle_change (changed_at);